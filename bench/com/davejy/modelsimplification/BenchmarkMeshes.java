@@ -0,0 +1,68 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 基准测试使用的模型。各个基准的@Param 取值为"dinosaur" 或者一个整数：
+ * "dinosaur" 为项目根目录下的dinosaur.2k.obj（可用-Dbench.dinosaur=路径 指定其它位置），
+ * 整数为生成的起伏网格（高度场）模型的大约顶点数，用于观察耗时随模型大小的变化
+ */
+class BenchmarkMeshes {
+
+    static final String DINOSAUR = "dinosaur";
+
+    private BenchmarkMeshes() {
+    }
+
+    /**
+     * @param mesh "dinosaur" 或者生成模型的顶点数
+     * @return 模型的.obj 文本
+     * @throws IOException
+     */
+    static String objText(String mesh) throws IOException {
+        if (DINOSAUR.equals(mesh)) {
+            Path path = Paths.get(System.getProperty("bench.dinosaur", "dinosaur.2k.obj"));
+            return new String(Files.readAllBytes(path), StandardCharsets.US_ASCII);
+        }
+        return grid(Integer.parseInt(mesh));
+    }
+
+    /**
+     * 从.obj 文本建立模型
+     */
+    static ObjectModel load(String objText, int mode) {
+        ObjectModel model = new ObjectModel(new StringReader(objText));
+        model.setMode(mode);
+        return model;
+    }
+
+    /**
+     * 生成n * n 个顶点的起伏网格，n 为不小于sqrt(vertexCount) 的整数。
+     * 高度为几个正弦波的叠加，使各处的收缩代价不同，又没有重复的顶点和退化的面
+     */
+    static String grid(int vertexCount) {
+        int n = Math.max(2, (int) Math.ceil(Math.sqrt(vertexCount)));
+        StringBuilder sb = new StringBuilder(n * n * 64);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                float x = (float) i / (n - 1);
+                float y = (float) j / (n - 1);
+                float z = (float) (0.05 * Math.sin(x * 17) * Math.cos(y * 13) + 0.02 * Math.sin((x + y) * 41));
+                sb.append("v ").append(x).append(' ').append(y).append(' ').append(z).append('\n');
+            }
+        }
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = 0; j < n - 1; j++) {
+                int a = i * n + j + 1, b = a + 1, c = a + n, d = c + 1;
+                sb.append("f ").append(a).append(' ').append(c).append(' ').append(b).append('\n');
+                sb.append("f ").append(b).append(' ').append(c).append(' ').append(d).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 单次边收缩：从优先队列取出代价最小的顶点、收缩并更新相邻顶点的代价。
+ * 收缩会改变模型，因此每轮迭代前重新加载模型并计算全部代价，每轮连续收缩BATCH 次，
+ * 结果为一轮的总时间（毫秒），BATCH 为1000 时在数值上等于单次收缩的微秒数。
+ * mode 依次为QEM、QEM_N、LAZY 和EDGE_CACHE
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = CollapseBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = CollapseBenchmark.BATCH)
+@Fork(1)
+public class CollapseBenchmark {
+
+    static final int BATCH = 1000;      // 不超过最小的模型的顶点数的一半
+
+    @Param({BenchmarkMeshes.DINOSAUR, "10000", "100000"})
+    public String mesh;
+
+    @Param({"0", "4", "8", "64"})
+    public int mode;
+
+    private String objText;
+    private ObjectModel model;
+
+    @Setup(Level.Trial)
+    public void loadText() throws IOException {
+        objText = BenchmarkMeshes.objText(mesh);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare() {
+        model = BenchmarkMeshes.load(objText, mode);
+        model.prepareSimplification();
+    }
+
+    @Benchmark
+    public int collapse() {
+        model.simplifiedTo(model.getVertexCount() - 1);
+        return model.getVertexCount();
+    }
+}
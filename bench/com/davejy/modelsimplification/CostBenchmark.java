@@ -0,0 +1,76 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 收缩代价的计算：简化前对整个模型计算二次方误差矩阵、全部代价并建立优先队列（computeAllCost），
+ * 以及单条边的computeCostCollapseTo。mode 为ObjectModel 的度量模式，依次为QEM、QEM_A、QEM_V、QEM_N
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CostBenchmark {
+
+    @Param({BenchmarkMeshes.DINOSAUR, "10000", "100000"})
+    public String mesh;
+
+    @Param({"0", "1", "2", "4"})
+    public int mode;
+
+    private ObjectModel model;
+    private int[] edges;            // 每条边2个顶点索引，每个面的三条边各一次
+    private int next;
+    private final float[] scratch = new float[ObjectModel.SCRATCH_SIZE];
+
+    @Setup
+    public void setup() throws IOException {
+        model = BenchmarkMeshes.load(BenchmarkMeshes.objText(mesh), mode);
+        model.prepareSimplification();
+
+        // 新加载的模型没有删除的顶点，快照中的顶点索引与模型中的相同
+        MeshSnapshot snapshot = model.compactArrays(false);
+        edges = new int[snapshot.faceCount * 6];
+        for (int f = 0; f < snapshot.faceCount; f++) {
+            for (int k = 0; k < 3; k++) {
+                edges[f * 6 + k * 2] = snapshot.triangles[f * 3 + k];
+                edges[f * 6 + k * 2 + 1] = snapshot.triangles[f * 3 + (k + 1) % 3];
+            }
+        }
+    }
+
+    /**
+     * 计算全部代价，包括二次方误差矩阵、每个顶点的最小代价和建立优先队列
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ObjectModel computeAllCost() {
+        model.prepareSimplification();
+        return model;
+    }
+
+    /**
+     * 依次计算每条边的收缩代价
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public float computeCostCollapseTo() {
+        int e = next;
+        next = e + 2 == edges.length ? 0 : e + 2;
+        return model.computeCostCollapseTo(edges[e], edges[e + 1], scratch);
+    }
+}
@@ -0,0 +1,56 @@
+package com.davejy.modelsimplification;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 4x4 矩阵求逆。矩阵与二次方误差矩阵的形式相同：左上3x3 为对称矩阵，最后一行为(0, 0, 0, 1)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    private static final int MATRICES = 1024;
+
+    private final float[][] matrices = new float[MATRICES][16];
+    private final float[] inverse = new float[16];
+    private int next;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (float[] m : matrices) {
+            for (int i = 0; i < 3; i++) {
+                for (int j = i; j < 4; j++) {
+                    float value = (float) random.nextDouble(-1, 1);
+                    m[i * 4 + j] = value;
+                    if (j < 3) m[j * 4 + i] = value;
+                }
+                m[i * 4 + i] += 3;
+            }
+            m[15] = 1;
+        }
+    }
+
+    @Benchmark
+    public boolean invertM() {
+        float[] m = matrices[next];
+        next = (next + 1) & (MATRICES - 1);
+        return MatrixHelper.invertM(inverse, m);
+    }
+}
@@ -0,0 +1,80 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * .obj 文件的读取：ObjectFileParser 的词法分析，以及包括建立邻接表在内的完整加载
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({BenchmarkMeshes.DINOSAUR, "10000", "100000"})
+    public String mesh;
+
+    private String objText;
+    private Path objFile;
+
+    @Setup
+    public void setup() throws IOException {
+        objText = BenchmarkMeshes.objText(mesh);
+        objFile = Files.createTempFile("bench", ".obj");
+        Files.write(objFile, objText.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(objFile);
+    }
+
+    /**
+     * 只取出所有记号，不解析数字，也不建立模型
+     * @return 记号的数目
+     */
+    @Benchmark
+    public int tokenize() {
+        ObjectFileParser st = new ObjectFileParser(new StringReader(objText));
+        int tokens = 0;
+        do {
+            st.getToken();
+            tokens++;
+        } while (st.ttype != StreamTokenizer.TT_EOF);
+        return tokens;
+    }
+
+    /**
+     * 从内存中的文本加载，不包括磁盘读取
+     */
+    @Benchmark
+    public ObjectModel load() {
+        return new ObjectModel(new StringReader(objText));
+    }
+
+    @Benchmark
+    public ObjectModel loadFromObjFile() {
+        return new ObjectModel(objFile.toString());
+    }
+}
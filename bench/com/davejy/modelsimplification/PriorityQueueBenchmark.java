@@ -0,0 +1,127 @@
+package com.davejy.modelsimplification;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 索引优先队列的insert、change 和delMin。同时测试泛型的IndexMinPQ 和简化时实际使用的FloatIndexMinPQ，
+ * 两者的操作顺序和键值相同，便于比较。insert 和delMin 的结果为处理size 个元素的总时间
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityQueueBenchmark {
+
+    @Param({"2000", "100000"})
+    public int size;
+
+    private float[] keys;
+    private Float[] boxedKeys;
+    private int[] order;            // change 依次修改的索引
+    private float[] newKeys;
+    private Float[] boxedNewKeys;
+    private int next;
+
+    private IndexMinPQ<Float> fullPQ;
+    private FloatIndexMinPQ fullFloatPQ;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        keys = new float[size];
+        boxedKeys = new Float[size];
+        order = new int[size];
+        newKeys = new float[size];
+        boxedNewKeys = new Float[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (float) random.nextDouble();
+            boxedKeys[i] = keys[i];
+            order[i] = random.nextInt(size);
+            newKeys[i] = (float) random.nextDouble();
+            boxedNewKeys[i] = newKeys[i];
+        }
+        fullPQ = new IndexMinPQ<>(size);
+        fullFloatPQ = new FloatIndexMinPQ(size);
+        for (int i = 0; i < size; i++) {
+            fullPQ.insert(i, boxedKeys[i]);
+            fullFloatPQ.insert(i, keys[i]);
+        }
+    }
+
+    @Benchmark
+    public IndexMinPQ<Float> insert() {
+        IndexMinPQ<Float> pq = new IndexMinPQ<>(size);
+        for (int i = 0; i < size; i++) {
+            pq.insert(i, boxedKeys[i]);
+        }
+        return pq;
+    }
+
+    @Benchmark
+    public FloatIndexMinPQ insertFloat() {
+        FloatIndexMinPQ pq = new FloatIndexMinPQ(size);
+        for (int i = 0; i < size; i++) {
+            pq.insert(i, keys[i]);
+        }
+        return pq;
+    }
+
+    /**
+     * 修改满队列中一个元素的键，键值随机，可能上浮也可能下沉
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int change() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        fullPQ.change(order[i], boxedNewKeys[i]);
+        return fullPQ.minIndex();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int changeFloat() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        fullFloatPQ.change(order[i], newKeys[i]);
+        return fullFloatPQ.minIndex();
+    }
+
+    /**
+     * 插入全部元素后依次取出，包括插入的时间，减去insert 的结果即为取出的时间
+     */
+    @Benchmark
+    public int delMin() {
+        IndexMinPQ<Float> pq = insert();
+        int sum = 0;
+        while (!pq.isEmpty()) {
+            sum += pq.delMin();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int delMinFloat() {
+        FloatIndexMinPQ pq = insertFloat();
+        int sum = 0;
+        while (!pq.isEmpty()) {
+            sum += pq.delMin();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 模型的写出：.obj 格式的writeObjFile，服务端使用的文本格式writeTo 和二进制格式writeBinaryTo。
+ * 模型先简化到一半，使写出时需要跳过已删除的顶点和面；输出写入丢弃数据的流，不包括磁盘的时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({BenchmarkMeshes.DINOSAUR, "10000", "100000"})
+    public String mesh;
+
+    private ObjectModel model;
+
+    @Setup
+    public void setup() throws IOException {
+        model = BenchmarkMeshes.load(BenchmarkMeshes.objText(mesh), ObjectModel.MODE_QEM);
+        model.simplifiedToRatio(0.5f);
+    }
+
+    @Benchmark
+    public long writeObjFile() throws IOException {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        model.writeObjFile(os);
+        return os.count;
+    }
+
+    @Benchmark
+    public long writeTo() {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        model.writeTo(os);
+        return os.count;
+    }
+
+    @Benchmark
+    public long writeBinaryFlat() throws IOException {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        model.writeBinaryTo(os, false);
+        return os.count;
+    }
+
+    @Benchmark
+    public long writeBinaryIndexed() throws IOException {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        model.writeBinaryTo(os, true);
+        return os.count;
+    }
+
+    /**
+     * 只统计字节数的输出流
+     */
+    private static class DiscardingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
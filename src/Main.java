@@ -1,14 +1,30 @@
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.util.Arrays;
 
+import com.davejy.modelsimplification.LoadGenerator;
 import com.davejy.modelsimplification.ObjectModel;
+import com.davejy.modelsimplification.SimplificationServer;
 
 public class Main {
-	
+
 	public static final int PORT_ADDR = 5000;
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("server")) {
+			// server [port] [modelDir] [workers] [queueCapacity]
+			String[] serverArgs = Arrays.copyOfRange(args, 1, args.length);
+			if (serverArgs.length == 0) {
+				serverArgs = new String[]{String.valueOf(PORT_ADDR)};
+			}
+			SimplificationServer.main(serverArgs);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("loadgen")) {
+			// loadgen host port clients requestsPerClient model ratio mode [format]
+			LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		String filename = "dinosaur.2k.obj";
         ObjectModel om = new ObjectModel(filename);
 //        om.print();
@@ -19,18 +35,6 @@ public class Main {
 //        System.out.println("Q mse:" + qmse);
         om.writeObjFile();
 //        om.print();
-        
-//        try {
-//			ServerSocket serverSocket = new ServerSocket(PORT_ADDR);
-//			System.out.println("开始监听端口" + PORT_ADDR + "...");
-//			while(true) {
-//				Socket socket = serverSocket.accept();
-//				System.out.println("客户端已连接");
-//				om.writeTo(socket.getOutputStream());
-//			}
-//		} catch (IOException e) {
-//			e.printStackTrace();
-//		}
 	}
 
 }
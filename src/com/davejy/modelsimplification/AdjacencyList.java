@@ -0,0 +1,185 @@
+package com.davejy.modelsimplification;
+
+import java.util.Arrays;
+
+/**
+ * 基于int 数组的邻接表（CSR 格式），每一行保存一个顶点的相邻顶点或相邻面的索引。
+ * 每一行预留了一定的空间用于原地修改，空间不足时将该行移动到数组末尾，
+ * 数组中废弃的空间过多时整体重新排列。行内元素不重复，并保持加入的顺序
+ */
+class AdjacencyList {
+
+    private int[] data;            // 所有行的元素
+    private final int[] start;     // 每一行在data 中的起始位置
+    private final int[] size;      // 每一行的元素数目
+    private final int[] capacity;  // 每一行可容纳的元素数目
+    private int tail;              // data 中已使用部分的末尾
+    private long used;             // 所有行的容量之和，用于判断是否需要重新排列
+
+    /**
+     * @param capacities 每一行的初始容量
+     */
+    AdjacencyList(int[] capacities) {
+        int rows = capacities.length;
+        start = new int[rows];
+        size = new int[rows];
+        capacity = Arrays.copyOf(capacities, rows);
+        long total = 0;
+        for (int i = 0; i < rows; i++) {
+            start[i] = (int) total;
+            total += capacities[i];
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Adjacency list too large: " + total);
+        }
+        data = new int[(int) total];
+        tail = (int) total;
+        used = total;
+    }
+
+    int rows() {
+        return start.length;
+    }
+
+    int size(int row) {
+        return size[row];
+    }
+
+    int get(int row, int k) {
+        return data[start[row] + k];
+    }
+
+    boolean contains(int row, int value) {
+        int s = start[row];
+        int e = s + size[row];
+        for (int i = s; i < e; i++) {
+            if (data[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 若行中没有该元素，则将其加到行尾。若没有超出行的容量，不同的行可以被多个线程同时修改
+     * @return 是否加入了该元素
+     */
+    boolean add(int row, int value) {
+        if (contains(row, value)) {
+            return false;
+        }
+        if (size[row] == capacity[row]) {
+            ensureCapacity(row, size[row] + 1);
+        }
+        data[start[row] + size[row]++] = value;
+        return true;
+    }
+
+    /**
+     * 从行中删除该元素，其后的元素前移以保持顺序
+     * @return 是否删除了该元素
+     */
+    boolean remove(int row, int value) {
+        int s = start[row];
+        int e = s + size[row];
+        for (int i = s; i < e; i++) {
+            if (data[i] == value) {
+                System.arraycopy(data, i + 1, data, i, e - i - 1);
+                size[row]--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将行中的oldValue 替换为newValue，若行中已有newValue 则只删除oldValue，因此行的大小不会增加
+     * @return 行中是否有oldValue
+     */
+    boolean replace(int row, int oldValue, int newValue) {
+        if (contains(row, newValue)) {
+            return remove(row, oldValue);
+        }
+        int s = start[row];
+        int e = s + size[row];
+        for (int i = s; i < e; i++) {
+            if (data[i] == oldValue) {
+                data[i] = newValue;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 清空一行并释放它的空间
+     */
+    void clear(int row) {
+        size[row] = 0;
+        used -= capacity[row];
+        capacity[row] = 0;
+    }
+
+    /**
+     * 保证行的容量不小于n，必要时将该行移动到数组末尾
+     */
+    void ensureCapacity(int row, int n) {
+        if (capacity[row] >= n) {
+            return;
+        }
+        int newCapacity = Math.max(n, capacity[row] * 2);
+        if (tail + newCapacity > data.length) {
+            if (used - capacity[row] + newCapacity <= data.length / 2) {
+                // 废弃的空间超过一半，重新排列所有的行
+                repack();
+            }
+            if (tail + newCapacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(tail + newCapacity, data.length + (data.length >> 1)));
+            }
+        }
+        System.arraycopy(data, start[row], data, tail, size[row]);
+        start[row] = tail;
+        tail += newCapacity;
+        used += newCapacity - capacity[row];
+        capacity[row] = newCapacity;
+    }
+
+    /**
+     * 按映射表重新编号行和元素，得到一个紧凑的新邻接表，本邻接表不被修改
+     * @param rowMap 旧行号到新行号的映射，为-1 的行被丢弃
+     * @param rows 新的行数
+     * @param valueMap 旧元素到新元素的映射，保留的行中的元素都必须有映射
+     * @param slack 新的每一行在元素之外预留的空间
+     * @return 新的邻接表
+     */
+    AdjacencyList remap(int[] rowMap, int rows, int[] valueMap, int slack) {
+        int[] capacities = new int[rows];
+        for (int row = 0; row < start.length; row++) {
+            if (rowMap[row] >= 0) {
+                capacities[rowMap[row]] = size[row] + slack;
+            }
+        }
+        AdjacencyList list = new AdjacencyList(capacities);
+        for (int row = 0; row < start.length; row++) {
+            int r = rowMap[row];
+            if (r < 0) continue;
+            for (int k = 0; k < size[row]; k++) {
+                list.data[list.start[r] + k] = valueMap[data[start[row] + k]];
+            }
+            list.size[r] = size[row];
+        }
+        return list;
+    }
+
+    private void repack() {
+        int[] packed = new int[data.length];
+        int pos = 0;
+        for (int row = 0; row < start.length; row++) {
+            System.arraycopy(data, start[row], packed, pos, size[row]);
+            start[row] = pos;
+            pos += capacity[row];
+        }
+        data = packed;
+        tail = pos;
+    }
+}
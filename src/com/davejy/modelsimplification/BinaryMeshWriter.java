@@ -0,0 +1,144 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 模型的二进制传输格式，所有数据均为小端序。消息头为：
+ * <pre>
+ * magic        4 字节 "OMWF"
+ * version      int
+ * layout       int，LAYOUT_FLAT 或LAYOUT_INDEXED
+ * vertexCount  int，LAYOUT_FLAT 时为0
+ * faceCount    int
+ * </pre>
+ * LAYOUT_FLAT 之后每个面依次为3个顶点的坐标和面的法向量，共12个float，与writeTo(OutputStream) 的文本行一一对应；
+ * LAYOUT_INDEXED 之后为float[vertexCount * 3] 的顶点坐标、int[faceCount * 3] 的顶点索引（从0开始）
+ * 以及float[faceCount * 3] 的面法向量，共享的顶点只发送一次。
+ * 数据先收集到一个较大的缓冲区中，因此一个模型只需要少量几次写操作
+ */
+class BinaryMeshWriter {
+
+    static final int MAGIC = 'O' | 'M' << 8 | 'W' << 16 | 'F' << 24;
+    static final int VERSION = 1;
+    static final int LAYOUT_FLAT = 0;
+    static final int LAYOUT_INDEXED = 1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int FLAT_FACE_FLOATS = 12;
+    private static final int STAGING_FACES = 4096;        // LAYOUT_FLAT 时每次整理到临时数组中的面数
+
+    private final WritableByteChannel channel;            // 与out 只有一个不为null
+    private final OutputStream out;
+    private ByteBuffer buffer;
+
+    /**
+     * 写入通道，使用直接缓冲区。缓冲区在第一次写出时按模型大小分配，之后复用
+     */
+    BinaryMeshWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.out = null;
+    }
+
+    /**
+     * 写入输出流，使用堆缓冲区，整块直接交给输出流而不经过Channels.newChannel 的小块复制
+     */
+    BinaryMeshWriter(OutputStream out) {
+        this.channel = null;
+        this.out = out;
+    }
+
+    /**
+     * 写出一个模型，不关闭通道或输出流
+     * @param mesh 紧凑的模型数据，必须包含面的法向量
+     * @param indexed 是否使用LAYOUT_INDEXED
+     * @throws IOException
+     */
+    void write(MeshSnapshot mesh, boolean indexed) throws IOException {
+        // 小模型只分配需要的大小
+        long bytes = HEADER_SIZE + (indexed ? (mesh.vertexCount * 3L + mesh.faceCount * 6L) * 4
+                : mesh.faceCount * (long) FLAT_FACE_FLOATS * 4);
+        int capacity = (int) Math.min(BUFFER_SIZE, bytes);
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = (out != null ? ByteBuffer.allocate(capacity) : ByteBuffer.allocateDirect(capacity))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC)
+              .putInt(VERSION)
+              .putInt(indexed ? LAYOUT_INDEXED : LAYOUT_FLAT)
+              .putInt(indexed ? mesh.vertexCount : 0)
+              .putInt(mesh.faceCount);
+
+        final float[] positions = mesh.positions;
+        final int[] triangles = mesh.triangles;
+        final float[] normals = mesh.normals;
+        if (indexed) {
+            writeFloats(positions, 0, mesh.vertexCount * 3);
+            writeInts(triangles, 0, mesh.faceCount * 3);
+            writeFloats(normals, 0, mesh.faceCount * 3);
+        } else {
+            // 每个面的数据先整理到临时数组中，再整块放入缓冲区
+            float[] staging = new float[Math.min(mesh.faceCount, STAGING_FACES) * FLAT_FACE_FLOATS];
+            for (int from = 0; from < mesh.faceCount; from += STAGING_FACES) {
+                int to = Math.min(mesh.faceCount, from + STAGING_FACES);
+                int n = 0;
+                for (int f = from; f < to; f++) {
+                    for (int k = 0; k < 3; k++) {
+                        int v = triangles[f * 3 + k] * 3;
+                        staging[n++] = positions[v];
+                        staging[n++] = positions[v + 1];
+                        staging[n++] = positions[v + 2];
+                    }
+                    staging[n++] = normals[f * 3];
+                    staging[n++] = normals[f * 3 + 1];
+                    staging[n++] = normals[f * 3 + 2];
+                }
+                writeFloats(staging, 0, n);
+            }
+        }
+        drain();
+    }
+
+    private void writeFloats(float[] data, int offset, int n) throws IOException {
+        int i = offset;
+        while (i < offset + n) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            int count = Math.min(offset + n - i, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(data, i, count);
+            buffer.position(buffer.position() + count * 4);
+            i += count;
+        }
+    }
+
+    private void writeInts(int[] data, int offset, int n) throws IOException {
+        int i = offset;
+        while (i < offset + n) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            int count = Math.min(offset + n - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(data, i, count);
+            buffer.position(buffer.position() + count * 4);
+            i += count;
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        if (out != null) {
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package com.davejy.modelsimplification;
+
+/**
+ * 协作式的取消标记。另一个线程调用cancel() 之后，使用该标记的简化在下一次检查时结束，
+ * 已完成的收缩保留，模型仍然是完整的。一个标记可以被多次简化共用，取消后不能恢复
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,115 @@
+package com.davejy.modelsimplification;
+
+/**
+ * 以边为键的收缩代价缓存，使每条边只在端点的数据改变后才重新计算，而不是从两个端点各计算一次。
+ * 使用开放寻址（线性探测）的散列表，边(a, b) 与(b, a) 通常视为同一条边；代价与端点的顺序有关时（如法向量度量）
+ * 则分别缓存。每一项记录计算时两个端点的版本，版本不一致的项视为过期。缓存已满时直接清空。不是线程安全的
+ */
+class EdgeCostCache {
+
+    private static final int EMPTY = -1;
+    // 每一项占8个int（32字节），一次查找只访问一个缓存行：
+    // 两个端点、两个端点的版本、代价和收缩点的位置（以float 的位表示）
+    private static final int STRIDE = 8;
+
+    private final int[] table;
+    private final boolean directed;             // 是否区分边的两个方向
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * @param expectedEdges 预计同时缓存的边的数目
+     * @param directed 为true 时(a, b) 与(b, a) 分别缓存
+     */
+    EdgeCostCache(int expectedEdges, boolean directed) {
+        this.directed = directed;
+        if (directed) {
+            expectedEdges *= 2;
+        }
+        int capacity = Integer.highestOneBit(Math.max(16, expectedEdges / 3 * 4)) << 1;
+        table = new int[capacity * STRIDE];
+        mask = capacity - 1;
+        maxSize = capacity / 4 * 3;
+        clear();
+    }
+
+    /**
+     * 查找边(a, b) 的收缩代价
+     * @param versionA 顶点a 当前的版本
+     * @param versionB 顶点b 当前的版本
+     * @param res 命中时保存收缩点的位置
+     * @param ro 位置在res 中的偏移量
+     * @return 收缩代价，没有缓存或者已过期时返回NaN
+     */
+    float get(int a, int b, int versionA, int versionB, float[] res, int ro) {
+        if (!directed && a > b) {
+            return get(b, a, versionB, versionA, res, ro);
+        }
+        for (int i = slot(a, b); ; i = (i + 1) & mask) {
+            int e = i * STRIDE;
+            if (table[e] == EMPTY) {
+                return Float.NaN;
+            }
+            if (table[e] == a && table[e + 1] == b) {
+                if (table[e + 2] != versionA || table[e + 3] != versionB) {
+                    return Float.NaN;
+                }
+                res[ro] = Float.intBitsToFloat(table[e + 5]);
+                res[ro + 1] = Float.intBitsToFloat(table[e + 6]);
+                res[ro + 2] = Float.intBitsToFloat(table[e + 7]);
+                return Float.intBitsToFloat(table[e + 4]);
+            }
+        }
+    }
+
+    /**
+     * 保存边(a, b) 的收缩代价和收缩点的位置，替换原有的项
+     * @param pos 收缩点的位置
+     * @param po 位置在pos 中的偏移量
+     */
+    void put(int a, int b, int versionA, int versionB, float cost, float[] pos, int po) {
+        if (!directed && a > b) {
+            put(b, a, versionB, versionA, cost, pos, po);
+            return;
+        }
+        int i = slot(a, b);
+        while (table[i * STRIDE] != EMPTY && (table[i * STRIDE] != a || table[i * STRIDE + 1] != b)) {
+            i = (i + 1) & mask;
+        }
+        int e = i * STRIDE;
+        if (table[e] == EMPTY) {
+            if (size == maxSize) {
+                clear();
+                e = slot(a, b) * STRIDE;
+            }
+            table[e] = a;
+            table[e + 1] = b;
+            size++;
+        }
+        table[e + 2] = versionA;
+        table[e + 3] = versionB;
+        table[e + 4] = Float.floatToRawIntBits(cost);
+        table[e + 5] = Float.floatToRawIntBits(pos[po]);
+        table[e + 6] = Float.floatToRawIntBits(pos[po + 1]);
+        table[e + 7] = Float.floatToRawIntBits(pos[po + 2]);
+    }
+
+    void clear() {
+        for (int e = 0; e < table.length; e += STRIDE) {
+            table[e] = EMPTY;
+        }
+        size = 0;
+    }
+
+    private int slot(int a, int b) {
+        // MurmurHash3 的fmix64
+        long key = ((long) a << 32) | b;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -0,0 +1,273 @@
+package com.davejy.modelsimplification;
+
+/**
+ * 以float 为元素的索引最小优先队列，与IndexMinPQ 的语义相同，但不需要装箱。
+ * 使用由0开始的四叉堆，元素按堆中的位置与索引一起保存，比较时不需要间接访问，减少缓存未命中
+ */
+class FloatIndexMinPQ {
+
+    private static final int D = 4;    // 堆的叉数
+
+    private int N;                 // PQ中元素的数量
+    private final int[] pq;        // 索引四叉堆，由0开始
+    private final float[] heapKeys;// heapKeys[i] 为pq[i] 对应的元素
+    private final int[] qp;        // 逆序：qp[pq[i]] = i，不在队列中时为-1
+
+    /**
+     * 创建一个最大容量为maxN 的优先队列，索引的取值范围为0至maxN-1
+     * @param maxN 最大容量
+     */
+    public FloatIndexMinPQ(int maxN) {
+        pq = new int[maxN];
+        heapKeys = new float[maxN];
+        qp = new int[maxN];
+        for (int i = 0; i < maxN; i++) {
+            qp[i] = -1;
+        }
+    }
+
+    /**
+     * 优先队列中的元素数量
+     * @return
+     */
+    public int size() {
+        return N;
+    }
+
+    /**
+     * 优先队列是否为空
+     * @return
+     */
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    /**
+     * 是否存在索引为k的元素
+     * @param k
+     * @return
+     */
+    public boolean contains(int k) {
+        return qp[k] != -1;
+    }
+
+    /**
+     * 插入一个元素，将它和索引k相关联
+     * @param k
+     * @param key
+     */
+    public void insert(int k, float key) {
+        if (contains(k)) {
+            throw new RuntimeException();
+        }
+        swim(N++, k, key);
+    }
+
+    /**
+     * 将所有未被排除的索引及其元素一次性加入空的优先队列，自底向上构造堆，比逐个插入更快
+     * @param keys keys[k] 为索引k的元素
+     * @param excluded excluded[k] 为true 时不加入索引k，可以为null
+     */
+    public void heapify(float[] keys, boolean[] excluded) {
+        if (!isEmpty()) {
+            throw new RuntimeException();
+        }
+        for (int k = 0; k < qp.length; k++) {
+            if (excluded == null || !excluded[k]) {
+                place(N++, k, keys[k]);
+            }
+        }
+        if (N > 1) {
+            for (int i = (N - 2) / D; i >= 0; i--) {
+                sink(i, pq[i], heapKeys[i]);
+            }
+        }
+    }
+
+    /**
+     * 返回最小的元素
+     * @return
+     */
+    public float min() {
+        return heapKeys[0];
+    }
+
+    /**
+     * 返回最小元素的索引
+     * @return
+     */
+    public int minIndex() {
+        return pq[0];
+    }
+
+    /**
+     * 返回索引k的元素
+     * @param k
+     * @return
+     */
+    public float keyOf(int k) {
+        if (!contains(k)) {
+            throw new RuntimeException();
+        }
+        return heapKeys[qp[k]];
+    }
+
+    /**
+     * 删除最小元素并返回它的索引
+     * @return 元素索引
+     */
+    public int delMin() {
+        int indexOfMin = pq[0];
+        qp[indexOfMin] = -1;
+        N--;
+        if (N > 0) {
+            sink(0, pq[N], heapKeys[N]);
+        }
+        return indexOfMin;
+    }
+
+    /**
+     * 将索引k的元素设为key
+     * @param k
+     * @param key
+     */
+    public void change(int k, float key) {
+        if (!contains(k)) {
+            throw new RuntimeException();
+        }
+        int i = qp[k];
+        if (key < heapKeys[i]) {
+            swim(i, k, key);
+        } else {
+            sink(i, k, key);
+        }
+    }
+
+    /**
+     * 删去索引k及其相关联的元素
+     * @param k
+     */
+    public void delete(int k) {
+        if (!contains(k)) {
+            throw new RuntimeException();
+        }
+        int i = qp[k];
+        qp[k] = -1;
+        N--;
+        if (i == N) {
+            return;
+        }
+        // 用最后一个元素填补空位
+        int last = pq[N];
+        float key = heapKeys[N];
+        if (i > 0 && key < heapKeys[(i - 1) / D]) {
+            swim(i, last, key);
+        } else {
+            sink(i, last, key);
+        }
+    }
+
+    /**
+     * 将索引k、元素key 从堆中的位置i 开始上浮
+     */
+    private void swim(int i, int k, float key) {
+        while (i > 0) {
+            int parent = (i - 1) / D;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        place(i, k, key);
+    }
+
+    /**
+     * 将索引k、元素key 从堆中的位置i 开始下沉
+     */
+    private void sink(int i, int k, float key) {
+        while (true) {
+            int first = i * D + 1;
+            if (first >= N) {
+                break;
+            }
+            int last = Math.min(first + D, N);
+            int j = first;
+            float min = heapKeys[first];
+            for (int c = first + 1; c < last; c++) {
+                if (heapKeys[c] < min) {
+                    min = heapKeys[c];
+                    j = c;
+                }
+            }
+            if (key <= min) {
+                break;
+            }
+            move(j, i);
+            i = j;
+        }
+        place(i, k, key);
+    }
+
+    /**
+     * 将堆中位置from 的元素移动到位置to
+     */
+    private void move(int from, int to) {
+        pq[to] = pq[from];
+        heapKeys[to] = heapKeys[from];
+        qp[pq[to]] = to;
+    }
+
+    private void place(int i, int k, float key) {
+        pq[i] = k;
+        heapKeys[i] = key;
+        qp[k] = i;
+    }
+
+
+    /**
+     * 单元测试代码
+     * @param args
+     */
+    public static final void main(String[] args) {
+        FloatIndexMinPQ pq = new FloatIndexMinPQ(10);
+        pq.insert(0, 2);
+        pq.insert(2, 1);
+        pq.insert(3, 3);
+        pq.insert(4, 6);
+        pq.insert(5, 5);
+        pq.insert(6, 4);
+        pq.insert(7, 3);
+
+        System.out.println(pq.size());
+        System.out.println(pq.contains(9));
+        System.out.println(pq.minIndex() + " " + pq.min());
+        System.out.println("----------------------------------\n");
+
+        pq.delMin();
+
+        System.out.println(pq.size());
+        System.out.println(pq.minIndex() + " " + pq.min());
+        System.out.println("----------------------------------\n");
+
+        pq.change(7, 0);
+        System.out.println(pq.minIndex() + " " + pq.min());
+        System.out.println("----------------------------------\n");
+
+        pq.delete(7);
+        pq.delete(4);
+        while (!pq.isEmpty()) {
+            System.out.print(pq.min() + " ");
+            pq.delMin();
+        }
+        System.out.println();
+
+        FloatIndexMinPQ heap = new FloatIndexMinPQ(8);
+        heap.heapify(new float[]{5, 3, 7, 1, 4, 0, 6, 2}, new boolean[]{false, false, false, false, false, true, false, false});
+        while (!heap.isEmpty()) {
+            System.out.print(heap.min() + " ");
+            heap.delMin();
+        }
+        System.out.println();
+    }
+}
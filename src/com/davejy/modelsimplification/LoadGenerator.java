@@ -0,0 +1,129 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SimplificationServer 的本地压力测试客户端。若干个客户端线程各自顺序发送请求并读完整个回复，
+ * 结束后输出每秒请求数以及延迟的p50、p99
+ */
+public class LoadGenerator {
+
+    private final String host;
+    private final int port;
+    private final String request;
+
+    public LoadGenerator(String host, int port, String request) {
+        this.host = host;
+        this.port = port;
+        this.request = request;
+    }
+
+    /**
+     * 运行压力测试
+     * @param clients 并发的客户端数目
+     * @param requestsPerClient 每个客户端发送的请求数
+     * @return 按从小到大排序的每个成功请求的延迟（纳秒）
+     * @throws InterruptedException
+     */
+    public long[] run(int clients, int requestsPerClient) throws InterruptedException {
+        final long[][] latencies = new long[clients][requestsPerClient];
+        final int[] completed = new int[clients];
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            threads[c] = new Thread(() -> {
+                for (int i = 0; i < requestsPerClient; i++) {
+                    long start = System.nanoTime();
+                    if (send()) {
+                        latencies[client][completed[client]++] = System.nanoTime() - start;
+                    } else {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        int total = 0;
+        for (int n : completed) {
+            total += n;
+        }
+        long[] all = new long[total];
+        int k = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, k, completed[c]);
+            k += completed[c];
+        }
+        Arrays.sort(all);
+        if (failures.get() > 0) {
+            System.err.println("failed requests: " + failures.get());
+        }
+        return all;
+    }
+
+    /**
+     * 发送一次请求并读完回复
+     * @return 回复是否成功
+     */
+    private boolean send() {
+        try (Socket socket = new Socket(host, port)) {
+            OutputStream os = socket.getOutputStream();
+            os.write((request + "\n").getBytes(StandardCharsets.US_ASCII));
+            os.flush();
+            InputStream is = socket.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int n = is.read(buffer);
+            if (n < 0 || (n >= 4 && buffer[0] == 'E' && buffer[1] == 'R' && buffer[2] == 'R' && buffer[3] == ' ')) {
+                return false;
+            }
+            while (is.read(buffer) >= 0) {
+                // 读完整个回复
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * LoadGenerator host port clients requestsPerClient model ratio mode [format]
+     * @param args
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 7) {
+            System.err.println("usage: LoadGenerator host port clients requestsPerClient model ratio mode [format]");
+            return;
+        }
+        String request = args[4] + " " + args[5] + " " + args[6] + (args.length > 7 ? " " + args[7] : "");
+        LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]), request);
+        int clients = Integer.parseInt(args[2]);
+        int requests = Integer.parseInt(args[3]);
+
+        long start = System.nanoTime();
+        long[] latencies = generator.run(clients, requests);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("requests: %d, %.1f req/s%n", latencies.length, latencies.length / seconds);
+        System.out.printf("p50: %.2f ms, p99: %.2f ms%n",
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6);
+    }
+}
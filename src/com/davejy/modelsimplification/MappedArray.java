@@ -0,0 +1,77 @@
+package com.davejy.modelsimplification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 保存在磁盘文件中、通过内存映射访问的数组，每个元素为4字节的int 或float，数据不占用Java 堆。
+ * 文件按固定大小的段映射，写入时按需扩展。扩展不是线程安全的，全部写入之后可以在多个线程中同时读取
+ */
+class MappedArray implements Closeable {
+
+    private static final int SEGMENT_SHIFT = 24;                        // 每段2^24 个元素（64MB）
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+    /**
+     * @param file 保存数据的文件，已存在时被清空
+     * @throws IOException
+     */
+    MappedArray(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    float getFloat(long i) {
+        return segment(i).getFloat(((int) i & SEGMENT_MASK) << 2);
+    }
+
+    void putFloat(long i, float value) {
+        segment(i).putFloat(((int) i & SEGMENT_MASK) << 2, value);
+    }
+
+    /**
+     * 未写入过的元素为0
+     */
+    int getInt(long i) {
+        return segment(i).getInt(((int) i & SEGMENT_MASK) << 2);
+    }
+
+    void putInt(long i, int value) {
+        segment(i).putInt(((int) i & SEGMENT_MASK) << 2, value);
+    }
+
+    private MappedByteBuffer segment(long i) {
+        int s = (int) (i >>> SEGMENT_SHIFT);
+        if (s < segments.length && segments[s] != null) {
+            return segments[s];
+        }
+        if (s >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(s + 1, segments.length * 2));
+        }
+        try {
+            // 映射超出文件末尾的区域时文件自动扩展，新的部分为0
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, (long) s << (SEGMENT_SHIFT + 2),
+                    4L << SEGMENT_SHIFT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments[s].order(ByteOrder.nativeOrder());
+        return segments[s];
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,499 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 基于内存映射的.obj 文件解析器，直接扫描字节，将顶点和面写入预先分配好的基本类型数组。
+ * 支持的语法与ObjectFileParser 相同：只读取v 和f 记录，忽略'/'后面的数据，
+ * '!'和'#'之后为注释，行尾的'\'表示续行
+ */
+class MappedObjectFileParser {
+
+    private static final int MAX_WINDOW = 1 << 30;            // 单次映射的最大字节数
+    private static final int CHUNK_SIZE = 4 << 20;            // 并行解析时每块的字节数
+    private static final int MAX_MANTISSA_DIGITS = 18;        // long 能精确表示的十进制位数
+    private static final double[] POW10 = new double[23];     // double 能精确表示的10的幂
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final Path path;
+
+    float[] positions;        // 顶点坐标，每个顶点占3个float
+    int vertexCount;          // 顶点数目
+    int[] triangles;          // 面的顶点索引（从0开始），每个面占3个int
+    int faceCount;            // 三角面数目
+
+    private RecordHandler handler;    // 流式解析时接收记录，为null 时写入数组
+    private MappedByteBuffer buf;     // 当前解析的映射区域
+    private int pos;                  // 当前读取位置
+    private int limit;                // 当前区域中完整行的结束位置
+    private int lineNo;               // 当前行号，用于错误信息
+
+    MappedObjectFileParser(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 解析整个文件。第一遍只统计顶点和面的数目，用于精确分配数组，第二遍解析数据
+     * @throws IOException
+     * @throws ParsingErrorException
+     */
+    void parse() throws IOException {
+        parse(false);
+    }
+
+    /**
+     * 解析整个文件。文件在换行处被切分为若干块，第一遍统计每块中顶点和面的数目，
+     * 由此得到每块在全局数组中的起始位置，第二遍各块独立解析并写入各自的区间
+     * @param parallel 是否在fork-join 线程池上并行处理各块
+     * @throws IOException
+     * @throws ParsingErrorException
+     */
+    void parse(boolean parallel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<Chunk> chunks = new ArrayList<>();
+            long size = channel.size();
+            long base = 0;
+            while (base < size) {
+                MappedByteBuffer window = mapWindow(channel, base, size);
+                int length = window.limit();
+                splitWindow(window, length, parallel ? CHUNK_SIZE : length, chunks);
+                base += length;
+            }
+
+            Stream<Chunk> stream = parallel ? chunks.parallelStream() : chunks.stream();
+            stream.forEach(chunk -> new MappedObjectFileParser(path).count(chunk));
+
+            // 由各块的数目计算其在全局数组中的起始位置
+            int vertices = 0;
+            int faces = 0;
+            int lines = 1;
+            for (Chunk chunk : chunks) {
+                chunk.vertexOffset = vertices;
+                chunk.faceOffset = faces;
+                chunk.firstLine = lines;
+                vertices += chunk.vertices;
+                faces += chunk.faces;
+                lines += chunk.lines;
+            }
+            positions = new float[vertices * 3];
+            triangles = new int[faces * 3];
+            vertexCount = vertices;
+            faceCount = faces;
+
+            stream = parallel ? chunks.parallelStream() : chunks.stream();
+            stream.forEach(chunk -> {
+                MappedObjectFileParser worker = new MappedObjectFileParser(path);
+                worker.positions = positions;
+                worker.triangles = triangles;
+                worker.vertexCount = chunk.vertexOffset;
+                worker.faceCount = chunk.faceOffset;
+                worker.lineNo = chunk.firstLine;
+                worker.reset(chunk.buffer, chunk.start, chunk.end);
+                worker.parseLines();
+            });
+        }
+    }
+
+    /**
+     * 按顺序扫描整个文件，每读到一个顶点或面就交给handler，不分配保存模型的数组，
+     * 内存占用与文件大小无关。面的顶点索引从0开始，不检查是否越界
+     * @param handler 接收顶点和面的记录
+     * @throws IOException
+     * @throws ParsingErrorException
+     */
+    void stream(RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.handler = handler;
+            vertexCount = 0;
+            faceCount = 0;
+            lineNo = 1;
+            long size = channel.size();
+            long base = 0;
+            while (base < size) {
+                MappedByteBuffer window = mapWindow(channel, base, size);
+                reset(window, 0, window.limit());
+                parseLines();
+                base += window.limit();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.handler = null;
+            buf = null;
+        }
+    }
+
+    /**
+     * 映射从base 开始的区域，区域只保留完整的行，剩余部分放到下一个区域
+     * @return 映射的区域，其limit 为完整的行的结束位置
+     */
+    private static MappedByteBuffer mapWindow(FileChannel channel, long base, long size) throws IOException {
+        int length = (int) Math.min(MAX_WINDOW, size - base);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+        if (base + length < size) {
+            length = lastLineEnd(window, length);
+            if (length == 0) {
+                throw new ParsingErrorException("Line too long near offset " + base);
+            }
+        }
+        window.limit(length);
+        return window;
+    }
+
+    /**
+     * 统计块中的行数以及顶点和面的数目
+     */
+    private void count(Chunk chunk) {
+        reset(chunk.buffer, chunk.start, chunk.end);
+        lineNo = 0;
+        while (pos < limit) {
+            int keyword = readKeyword();
+            if (keyword == 'v') {
+                chunk.vertices++;
+            } else if (keyword == 'f') {
+                chunk.faces++;
+            }
+            skipToNextLine();
+        }
+        chunk.lines = lineNo;
+    }
+
+    /**
+     * 将映射区域在换行处切分为大小约为chunkSize 的块
+     */
+    private static void splitWindow(MappedByteBuffer window, int length, int chunkSize, List<Chunk> chunks) {
+        int start = 0;
+        while (start < length) {
+            int end = start + chunkSize;
+            if (end >= length) {
+                end = length;
+            } else {
+                while (end < length && (window.get(end - 1) != '\n' || isEscapedNewline(window, end - 1))) {
+                    end++;
+                }
+            }
+            chunks.add(new Chunk(window, start, end));
+            start = end;
+        }
+    }
+
+    private void reset(MappedByteBuffer buffer, int start, int end) {
+        buf = buffer;
+        pos = start;
+        limit = end;
+    }
+
+    private void parseLines() {
+        while (pos < limit) {
+            int keyword = readKeyword();
+            if (keyword == 'v') {
+                readVertex();
+            } else if (keyword == 'f') {
+                readFace();
+            }
+            skipToNextLine();
+        }
+    }
+
+    private void readVertex() {
+        float x = readFloat();
+        float y = readFloat();
+        float z = readFloat();
+        if (handler != null) {
+            handler.vertex(x, y, z);
+        } else {
+            int offset = vertexCount * 3;
+            positions[offset] = x;
+            positions[offset + 1] = y;
+            positions[offset + 2] = z;
+        }
+        vertexCount++;
+    }
+
+    private void readFace() {
+        int a = 0, b = 0, c = 0;
+        int n = 0;
+        skipBlanks();
+        while (!atLineEnd()) {
+            int index = readInt() - 1;
+            while (pos < limit && buf.get(pos) == '/') {
+                // 忽略'/'后面的数据，只读取顶点数据
+                pos++;
+                if (pos < limit && isNumberStart(buf.get(pos))) {
+                    readInt();
+                }
+            }
+            if (n == 0) {
+                a = index;
+            } else if (n == 1) {
+                b = index;
+            } else if (n == 2) {
+                c = index;
+            }
+            n++;
+            skipBlanks();
+        }
+        if (n < 3) {
+            throw new ParsingErrorException("Expected 3 vertices on line " + lineNo);
+        }
+        if (handler != null) {
+            handler.face(a, b, c);
+        } else {
+            int offset = faceCount * 3;
+            triangles[offset] = a;
+            triangles[offset + 1] = b;
+            triangles[offset + 2] = c;
+        }
+        faceCount++;
+    }
+
+    /**
+     * 读取行首的关键字
+     * @return 若关键字为单个字符'v'或'f'（不区分大小写）则返回该字符，否则返回0
+     */
+    private int readKeyword() {
+        skipBlanks();
+        int start = pos;
+        while (pos < limit && !isDelimiter(buf.get(pos))) {
+            pos++;
+        }
+        if (pos - start != 1) {
+            return 0;
+        }
+        int c = buf.get(start) | 0x20;
+        return c == 'v' || c == 'f' ? c : 0;
+    }
+
+    private float readFloat() {
+        skipBlanks();
+        final int start = pos;
+        boolean negative = false;
+        if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+            negative = buf.get(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        byte b;
+        while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+            }
+            any = true;
+            pos++;
+        }
+        if (pos < limit && buf.get(pos) == '.') {
+            pos++;
+            while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                }
+                any = true;
+                pos++;
+            }
+        }
+        if (!any) {
+            throw new ParsingErrorException("Expected number on line " + lineNo);
+        }
+        if (pos < limit && (buf.get(pos) | 0x20) == 'e') {
+            pos++;
+            boolean negativeExp = false;
+            if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+                negativeExp = buf.get(pos) == '-';
+                pos++;
+            }
+            int e = 0;
+            boolean anyExp = false;
+            while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+                if (e < 100000) e = e * 10 + (b - '0');
+                anyExp = true;
+                pos++;
+            }
+            if (!anyExp) {
+                throw new ParsingErrorException("Expected number on line " + lineNo);
+            }
+            exponent += negativeExp ? -e : e;
+        }
+        if (pos < limit && !isDelimiter(buf.get(pos))) {
+            throw new ParsingErrorException("Expected number on line " + lineNo);
+        }
+
+        double value;
+        if (exponent == 0) {
+            value = mantissa;
+        } else if (exponent < 0 && exponent >= -22) {
+            value = mantissa / POW10[-exponent];
+        } else if (exponent > 0 && exponent <= 22) {
+            value = mantissa * POW10[exponent];
+        } else {
+            // 超出快速路径的范围，交给Double 解析
+            byte[] token = new byte[pos - start];
+            for (int i = 0; i < token.length; i++) {
+                token[i] = buf.get(start + i);
+            }
+            return (float) Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private int readInt() {
+        boolean negative = false;
+        if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+            negative = buf.get(pos) == '-';
+            pos++;
+        }
+        int value = 0;
+        boolean any = false;
+        byte b;
+        while (pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            any = true;
+            pos++;
+        }
+        if (!any || (pos < limit && !isDelimiter(buf.get(pos)))) {
+            throw new ParsingErrorException("Expected number on line " + lineNo);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 跳过空白字符以及续行符
+     */
+    private void skipBlanks() {
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b == ' ' || b == '\t' || b == '\r') {
+                pos++;
+            } else if (b == '\\' && isContinuation(pos)) {
+                pos = skipContinuation(pos);
+                lineNo++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean atLineEnd() {
+        if (pos >= limit) {
+            return true;
+        }
+        byte b = buf.get(pos);
+        return b == '\n' || b == '#' || b == '!';
+    }
+
+    /**
+     * 跳过当前行剩余的内容（包括注释），停在下一行的行首
+     */
+    private void skipToNextLine() {
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b == '\n') {
+                pos++;
+                lineNo++;
+                return;
+            }
+            if (b == '\\' && isContinuation(pos)) {
+                pos = skipContinuation(pos);
+                lineNo++;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private boolean isContinuation(int i) {
+        i++;
+        if (i < limit && buf.get(i) == '\r') i++;
+        return i < limit && buf.get(i) == '\n';
+    }
+
+    private int skipContinuation(int i) {
+        i++;
+        if (buf.get(i) == '\r') i++;
+        return i + 1;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n'
+                || b == '/' || b == '#' || b == '!' || b == '\\';
+    }
+
+    private static boolean isNumberStart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+';
+    }
+
+    /**
+     * 返回区域中最后一个完整行的结束位置（换行符之后），不计入续行的换行符
+     */
+    private static int lastLineEnd(MappedByteBuffer buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n' && !isEscapedNewline(buffer, i)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isEscapedNewline(MappedByteBuffer buffer, int newline) {
+        int i = newline - 1;
+        if (i >= 0 && buffer.get(i) == '\r') i--;
+        return i >= 0 && buffer.get(i) == '\\';
+    }
+
+    /**
+     * 流式解析时接收顶点和面的记录，I/O 错误以UncheckedIOException 抛出，由stream 还原为IOException
+     */
+    interface RecordHandler {
+        void vertex(float x, float y, float z);
+
+        /**
+         * @param a 第一个顶点的索引（从0开始）
+         */
+        void face(int a, int b, int c);
+    }
+
+    /**
+     * 映射区域中以完整行为边界的一块数据
+     */
+    private static class Chunk {
+        final MappedByteBuffer buffer;
+        final int start;
+        final int end;
+
+        int vertices;         // 块中顶点的数目
+        int faces;            // 块中面的数目
+        int lines;            // 块中的行数
+        int vertexOffset;     // 块中第一个顶点的全局索引
+        int faceOffset;       // 块中第一个面的全局索引
+        int firstLine;        // 块中第一行的行号
+
+        Chunk(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 模型的二进制快照格式，用于快速重新加载。所有数据均为小端序：
+ * <pre>
+ * magic        4 字节 "OMSH"
+ * version      int
+ * flags        int，FLAG_FACE_DATA 表示包含面的法向量和面积
+ * vertexCount  int
+ * faceCount    int
+ * positions    float[vertexCount * 3]
+ * triangles    int[faceCount * 3]，顶点索引从0开始
+ * normals      float[faceCount * 3]，仅当FLAG_FACE_DATA
+ * areas        float[faceCount]，仅当FLAG_FACE_DATA
+ * </pre>
+ */
+class MeshSnapshot {
+
+    static final int MAGIC = 'O' | 'M' << 8 | 'S' << 16 | 'H' << 24;
+    static final int VERSION = 1;
+    static final int FLAG_FACE_DATA = 1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int MAX_WINDOW = 1 << 30;       // 单次映射的最大字节数，4字节对齐
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    float[] positions;
+    int vertexCount;
+    int[] triangles;
+    int faceCount;
+    float[] normals;      // 可以为null
+    float[] areas;        // 可以为null
+
+    /**
+     * 将未删除的顶点和面复制到紧凑的数组中，顶点按原有顺序重新编号
+     * @param vertexSlots 顶点的数目，包括已删除的顶点
+     * @param vertexCount 未删除的顶点的数目
+     * @param faceSlots 面的数目，包括已删除的面
+     * @param faceCount 未删除的面的数目
+     * @param normals 面的单位法向量，为null 时不复制法向量和面积
+     * @param areas 面的面积
+     * @return 紧凑的模型数据
+     */
+    static MeshSnapshot compact(float[] positions, boolean[] removedVertices, int vertexSlots, int vertexCount,
+                                int[] triangles, boolean[] removedFaces, int faceSlots, int faceCount,
+                                float[] normals, float[] areas) {
+        MeshSnapshot snapshot = new MeshSnapshot();
+        int[] table = new int[vertexSlots];
+        snapshot.positions = new float[vertexCount * 3];
+        int count = 0;
+        for (int i = 0; i < vertexSlots; i++) {
+            if (removedVertices[i]) continue;
+            table[i] = count;
+            System.arraycopy(positions, i * 3, snapshot.positions, count * 3, 3);
+            count++;
+        }
+        snapshot.vertexCount = count;
+
+        snapshot.triangles = new int[faceCount * 3];
+        if (normals != null) {
+            snapshot.normals = new float[faceCount * 3];
+            snapshot.areas = new float[faceCount];
+        }
+        count = 0;
+        for (int f = 0; f < faceSlots; f++) {
+            if (removedFaces[f]) continue;
+            snapshot.triangles[count * 3] = table[triangles[f * 3]];
+            snapshot.triangles[count * 3 + 1] = table[triangles[f * 3 + 1]];
+            snapshot.triangles[count * 3 + 2] = table[triangles[f * 3 + 2]];
+            if (normals != null) {
+                System.arraycopy(normals, f * 3, snapshot.normals, count * 3, 3);
+                snapshot.areas[count] = areas[f];
+            }
+            count++;
+        }
+        snapshot.faceCount = count;
+        return snapshot;
+    }
+
+    /**
+     * 将快照写入文件
+     * @param path 文件路径
+     * @throws IOException
+     */
+    void write(Path path) throws IOException {
+        int flags = normals != null ? FLAG_FACE_DATA : 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(vertexCount).putInt(faceCount);
+            writeFloats(channel, buffer, positions, vertexCount * 3);
+            writeInts(channel, buffer, triangles, faceCount * 3);
+            if (normals != null) {
+                writeFloats(channel, buffer, normals, faceCount * 3);
+                writeFloats(channel, buffer, areas, faceCount);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * 从文件读取快照，数据通过内存映射批量复制到数组中
+     * @param path 文件路径
+     * @return 快照
+     * @throws IOException
+     * @throws IncorrectFormatException 文件不是快照格式或版本不支持
+     */
+    static MeshSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IncorrectFormatException("Not a mesh snapshot: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IncorrectFormatException("Not a mesh snapshot: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IncorrectFormatException("Unsupported mesh snapshot version " + version);
+            }
+            int flags = header.getInt();
+
+            MeshSnapshot snapshot = new MeshSnapshot();
+            snapshot.vertexCount = header.getInt();
+            snapshot.faceCount = header.getInt();
+            long expected = HEADER_SIZE + 12L * snapshot.vertexCount + 12L * snapshot.faceCount;
+            if ((flags & FLAG_FACE_DATA) != 0) {
+                expected += 16L * snapshot.faceCount;
+            }
+            if (snapshot.vertexCount < 0 || snapshot.faceCount < 0 || channel.size() != expected) {
+                throw new IncorrectFormatException("Truncated or corrupt mesh snapshot: " + path);
+            }
+
+            long offset = HEADER_SIZE;
+            snapshot.positions = new float[snapshot.vertexCount * 3];
+            offset = readFloats(channel, offset, snapshot.positions);
+            snapshot.triangles = new int[snapshot.faceCount * 3];
+            offset = readInts(channel, offset, snapshot.triangles);
+            if ((flags & FLAG_FACE_DATA) != 0) {
+                snapshot.normals = new float[snapshot.faceCount * 3];
+                offset = readFloats(channel, offset, snapshot.normals);
+                snapshot.areas = new float[snapshot.faceCount];
+                readFloats(channel, offset, snapshot.areas);
+            }
+            return snapshot;
+        }
+    }
+
+    private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] data, int n)
+            throws IOException {
+        int i = 0;
+        while (i < n) {
+            int count = Math.min(n - i, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(data, i, count);
+            buffer.position(buffer.position() + count * 4);
+            i += count;
+            if (!buffer.hasRemaining() || buffer.remaining() < 4) {
+                drain(channel, buffer);
+            }
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] data, int n)
+            throws IOException {
+        int i = 0;
+        while (i < n) {
+            int count = Math.min(n - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(data, i, count);
+            buffer.position(buffer.position() + count * 4);
+            i += count;
+            if (!buffer.hasRemaining() || buffer.remaining() < 4) {
+                drain(channel, buffer);
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long readFloats(FileChannel channel, long offset, float[] data) throws IOException {
+        int i = 0;
+        while (i < data.length) {
+            int count = Math.min(data.length - i, MAX_WINDOW / 4);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, count * 4L);
+            region.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(data, i, count);
+            offset += count * 4L;
+            i += count;
+        }
+        return offset;
+    }
+
+    private static long readInts(FileChannel channel, long offset, int[] data) throws IOException {
+        int i = 0;
+        while (i < data.length) {
+            int count = Math.min(data.length - i, MAX_WINDOW / 4);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, count * 4L);
+            region.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(data, i, count);
+            offset += count * 4L;
+            i += count;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,197 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * .obj 文件写出器。顶点和面被分为若干块，各块在fork-join 线程池上并行格式化到可复用的字节缓冲区，
+ * 再按原有顺序写出，因此输出与串行格式化完全相同。数字的格式与"%f"、"%d"一致，但不创建任何对象
+ */
+class ObjectFileWriter {
+
+    private static final int BLOCK_SIZE = 8192;           // 每块的记录数
+    private static final int MAX_RECORD_BYTES = 160;      // 单条记录的最大字节数
+    private static final int FRACTION_DIGITS = 6;         // 与"%f"相同，保留6位小数
+    private static final double FRACTION_SCALE = 1e6;
+    private static final double MAX_FAST_VALUE = 1e12;    // 超过该值时交给Formatter 处理
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final float[] positions;
+    private final int vertexCount;
+    private final int[] triangles;
+    private final int faceCount;
+
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param positions 顶点坐标，每个顶点3个float
+     * @param vertexCount 顶点数目
+     * @param triangles 面的顶点索引（从0开始），每个面3个int
+     * @param faceCount 面的数目
+     */
+    ObjectFileWriter(float[] positions, int vertexCount, int[] triangles, int faceCount) {
+        this.positions = positions;
+        this.vertexCount = vertexCount;
+        this.triangles = triangles;
+        this.faceCount = faceCount;
+    }
+
+    /**
+     * 写出所有的顶点和面，不关闭channel
+     * @param channel 输出通道
+     * @throws IOException
+     */
+    void write(WritableByteChannel channel) throws IOException {
+        final int vertexBlocks = (vertexCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int faceBlocks = (faceCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int blocks = vertexBlocks + faceBlocks;
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxInFlight = pool.getParallelism() * 2;
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < blocks || !pending.isEmpty()) {
+                // 保持一定数量的块在格式化中，按提交顺序依次写出
+                while (next < blocks && pending.size() < maxInFlight) {
+                    final int block = next++;
+                    pending.add(pool.submit(() -> block < vertexBlocks
+                            ? formatVertices(block * BLOCK_SIZE, Math.min(vertexCount, (block + 1) * BLOCK_SIZE))
+                            : formatFaces((block - vertexBlocks) * BLOCK_SIZE,
+                                          Math.min(faceCount, (block - vertexBlocks + 1) * BLOCK_SIZE))));
+                }
+                Block block = pending.poll().get();
+                ByteBuffer bb = ByteBuffer.wrap(block.bytes, 0, block.length);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+                buffers.add(block.bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<Block> f : pending) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private Block formatVertices(int from, int to) {
+        byte[] out = acquireBuffer();
+        int pos = 0;
+        for (int i = from; i < to; i++) {
+            out[pos++] = 'v';
+            out[pos++] = ' ';
+            pos = formatFloat(positions[i * 3], out, pos);
+            out[pos++] = ' ';
+            pos = formatFloat(positions[i * 3 + 1], out, pos);
+            out[pos++] = ' ';
+            pos = formatFloat(positions[i * 3 + 2], out, pos);
+            pos = newLine(out, pos);
+        }
+        return new Block(out, pos);
+    }
+
+    private Block formatFaces(int from, int to) {
+        byte[] out = acquireBuffer();
+        int pos = 0;
+        for (int i = from; i < to; i++) {
+            out[pos++] = 'f';
+            out[pos++] = ' ';
+            pos = formatInt(triangles[i * 3] + 1, out, pos);
+            out[pos++] = ' ';
+            pos = formatInt(triangles[i * 3 + 1] + 1, out, pos);
+            out[pos++] = ' ';
+            pos = formatInt(triangles[i * 3 + 2] + 1, out, pos);
+            pos = newLine(out, pos);
+        }
+        return new Block(out, pos);
+    }
+
+    private byte[] acquireBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BLOCK_SIZE * MAX_RECORD_BYTES];
+    }
+
+    private static int newLine(byte[] out, int pos) {
+        for (byte b : LINE_SEPARATOR) {
+            out[pos++] = b;
+        }
+        return pos;
+    }
+
+    /**
+     * 按"%f"的格式（6位小数，四舍五入）写出浮点数
+     * @return 写出后的位置
+     */
+    static int formatFloat(float value, byte[] out, int pos) {
+        double d = Math.abs((double) value);
+        if (!(d < MAX_FAST_VALUE)) {
+            // NaN、无穷大以及很大的数很少出现，直接使用Formatter
+            byte[] s = String.format(Locale.ROOT, "%f", value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(s, 0, out, pos, s.length);
+            return pos + s.length;
+        }
+        if (Float.floatToRawIntBits(value) < 0) {
+            out[pos++] = '-';
+        }
+        long scaled = Math.round(d * FRACTION_SCALE);
+        pos = formatLong(scaled / (long) FRACTION_SCALE, out, pos);
+        out[pos++] = '.';
+        long fraction = scaled % (long) FRACTION_SCALE;
+        for (int i = pos + FRACTION_DIGITS - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return pos + FRACTION_DIGITS;
+    }
+
+    /**
+     * 按"%d"的格式写出整数
+     * @return 写出后的位置
+     */
+    static int formatInt(int value, byte[] out, int pos) {
+        return formatLong(value, out, pos);
+    }
+
+    private static int formatLong(long value, byte[] out, int pos) {
+        if (value < 0) {
+            out[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    /**
+     * 格式化完成的一块数据
+     */
+    private static class Block {
+        final byte[] bytes;
+        final int length;
+
+        Block(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+}
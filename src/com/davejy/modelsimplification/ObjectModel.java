@@ -2,19 +2,32 @@
 package com.davejy.modelsimplification;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StreamTokenizer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 public class ObjectModel {
 
@@ -23,11 +36,58 @@ public class ObjectModel {
     public static final int MODE_QEM_A = 1;		// 增加面积度量
     public static final int MODE_QEM_V = 2;		// 增加体积度量
     public static final int MODE_QEM_N = 4;		// 增加法向量度量
+    public static final int MODE_LAZY = 8;		// 延迟更新收缩代价，可与以上度量组合
+    public static final int MODE_PARALLEL = 16;	// 每轮并行进行一批互不相邻的收缩，可与以上模式组合
+    public static final int MODE_RANDOM = 32;	// 不使用优先队列，每次从随机选取的几条边中收缩代价最小的一条
+    public static final int MODE_EDGE_CACHE = 64;	// 按边缓存收缩代价，端点的数据改变后才重新计算
+    public static final int MODE_PROGRESSIVE = 128;	// 记录每一次收缩，之后可以用extractLOD 提取任意层次
     private int mode = 0;
 
-    private final List<Vertex> vertexList = new ArrayList<>();          // 顶点列表
-    private final List<Face> faceList = new ArrayList<>();              // 三角面列表
-    private IndexMinPQ<Float> costHeap;                               // 折叠代价的优先队列
+    // 模型数据以基本类型数组的形式按属性分别保存，删除的顶点和面只做标记，不改变其它顶点和面的索引
+    private float[] positions = new float[0];             // 顶点坐标，每个顶点3个float
+    private float[] quadrics = new float[0];              // 顶点的二次方误差矩阵（error quadric），每个顶点10个float，见QuadricHelper
+    private float[] bestPositions = new float[0];         // 代价最小的收缩顶点的位置，每个顶点3个float
+    private float[] costs = new float[0];                 // 最小收缩代价
+    private int[] candidates = new int[0];                // 收缩的另一个端点的索引
+    private boolean[] removedVertices = new boolean[0];   // 顶点是否已被删除
+    private boolean[] lockedVertices;                     // 不能删除也不能移动的顶点，为null 时没有
+    private int[] versions = new int[0];                  // 顶点的版本，相邻的顶点收缩后增加
+    private int[] costVersions = new int[0];              // 计算收缩代价时顶点的版本，与versions 不同时代价已过期
+    private int[] quadricVersions = new int[0];           // 顶点的二次方误差矩阵和位置的版本，用于判断边的缓存是否过期
+    // 为了减少程序的复杂性，加快简化速度，不允许相邻点和相邻面的列表中出现重复或者无效的元素索引，牺牲空间为代价
+    private AdjacencyList adjacentVertices;               // 相邻顶点的索引
+    private AdjacencyList adjacentFaces;                  // 相邻面的索引
+    private int vertexSlots;                              // 顶点的数目，包括已删除的顶点
+
+    private int[] triangles = new int[0];                 // 面的顶点索引，每个面3个int
+    private float[] normals = new float[0];               // 面的单位法向量，每个面3个float
+    private float[] areas = new float[0];                 // 面积
+    private float[] faceQuadrics = new float[0];          // 面的基础二次方误差矩阵（fundamental error quadric），每个面10个float
+    private boolean[] removedFaces = new boolean[0];      // 面是否已被删除
+    private int faceSlots;                                // 面的数目，包括已删除的面
+
+    private static final int ADJACENCY_SLACK = 2;         // 邻接表中每个顶点预留的空间
+
+    // 计算收缩代价时使用的临时空间：收缩后的二次方误差矩阵和收缩点的位置
+    private static final int SCRATCH_POSITION = QuadricHelper.SIZE;
+    static final int SCRATCH_SIZE = QuadricHelper.SIZE + 3;
+    private final float[] scratch = new float[SCRATCH_SIZE];
+
+    private static final int TEXT_BUFFER_SIZE = 64 * 1024;    // writeTo 的输出缓冲区大小
+    private static final int PARALLEL_CHUNK = 4096;       // 并行计算时每一块的大小
+    private static final int BATCH_CHUNK = 64;            // 并行收缩时每一块中收缩的数目
+    private static final int BATCH_FRACTION = 64;         // 并行简化时每一轮最多收缩剩余顶点的1/BATCH_FRACTION
+    private static final int RANDOM_CHOICES = 8;          // 随机简化时每次比较的边的数目
+    private static final long RANDOM_SEED = 0x5DEECE66DL; // 随机简化使用固定的种子，使结果可以重现
+    private static final int STOP_CHECK_INTERVAL = 64;    // 每隔多少次收缩检查一次截止时间和取消标记
+    private static final long NO_DEADLINE = Long.MIN_VALUE;   // 不限制简化时间
+    private static final int NOT_PREPARED = -1;
+
+    private FloatIndexMinPQ costHeap;                                 // 折叠代价的优先队列
+    private EdgeCostCache edgeCache;                                  // 边的收缩代价的缓存，未启用时为null
+    private ProgressiveMesh progressive;                              // 简化过程的记录，未记录时为null
+    private int preparedMode = NOT_PREPARED;                          // 当前的简化状态（优先队列等）对应的度量模式
+    private boolean autoCompact;                                      // 每次简化之后是否整理存储空间
     private int vN;                                                   // 模型中顶点的数目
     private int fN;                                                   // 模型中三角面的数目
 
@@ -49,6 +109,61 @@ public class ObjectModel {
         }
     }
 
+    private ObjectModel() {
+    }
+
+    /**
+     * 由紧凑的模型数据创建一个新的模型，数组只被读取，可以在多个模型之间共享
+     * @param mesh 紧凑的模型数据
+     * @return 新的模型
+     */
+    static ObjectModel fromSnapshot(MeshSnapshot mesh) {
+        ObjectModel model = new ObjectModel();
+        model.build(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount,
+                mesh.normals, mesh.areas, false);
+        return model;
+    }
+
+    /**
+     * 与fromSnapshot 相同，但新模型直接使用快照中的数组而不复制，快照之后不能再被使用。
+     * 用于刚生成、只交给这一个模型的快照，如各个细节层次和分块简化的结果
+     * @param mesh 紧凑的模型数据
+     * @return 新的模型
+     */
+    static ObjectModel fromOwnedSnapshot(MeshSnapshot mesh) {
+        ObjectModel model = new ObjectModel();
+        model.buildOwned(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount,
+                mesh.normals, mesh.areas, false);
+        return model;
+    }
+
+    /**
+     * 设置简化时使用的度量，可以是MODE_QEM 或MODE_QEM_A、MODE_QEM_V、MODE_QEM_N 的组合。
+     * 加上MODE_LAZY 时，收缩后相邻顶点的代价不立即重新计算，只标记为过期，
+     * 等到它成为队列中代价最小的顶点时再计算，结果与立即更新时略有不同。
+     * 加上MODE_PARALLEL 时，每一轮从队列中取出一批一环邻域互不相交的低代价收缩，在所有核上同时进行。
+     * 加上MODE_RANDOM 时不建立优先队列，每次随机选取RANDOM_CHOICES 条边并收缩其中代价最小的一条，
+     * 速度更快但不严格按代价顺序，此时MODE_LAZY 和MODE_PARALLEL 不起作用。
+     * 加上MODE_EDGE_CACHE 时，逐个收缩的过程中每条边的代价只在端点的数据改变后重新计算，需要额外的内存。
+     * 加上MODE_PROGRESSIVE 时记录简化过程，简化到需要的最低层次之后可以用extractLOD 提取其间的任意层次
+     * @param mode 度量模式
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * 设置是否在每次simplifiedTo 之后自动调用compact()，默认为false。
+     * 适合简化后长期保存的模型；需要用extractLOD 提取层次时不要开启
+     */
+    public void setAutoCompact(boolean autoCompact) {
+        this.autoCompact = autoCompact;
+    }
+
     /**
      * 从.obj 文件加载三维模型，适用于PC端
      * @param fileName 文件路径
@@ -58,8 +173,144 @@ public class ObjectModel {
     public ObjectModel loadFromObjFile(String fileName) throws FileNotFoundException {
         setBasePathFromFilename(fileName);
 
-        Reader reader = new BufferedReader(new FileReader(fileName));
-        return load(reader);
+        try (Reader reader = new BufferedReader(new FileReader(fileName))) {
+            return load(reader);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            // 只有关闭文件时会抛出，此时已经读完
+            return this;
+        }
+    }
+
+    /**
+     * 通过内存映射从.obj 文件加载三维模型，直接解析字节到基本类型数组，
+     * 可替代loadFromObjFile(String)，适用于较大的模型文件
+     * @param fileName 文件路径
+     * @return this
+     * @throws IOException
+     */
+    public ObjectModel loadFromObjFileMapped(String fileName) throws IOException {
+        return loadFromObjFileMapped(fileName, false);
+    }
+
+    /**
+     * 与loadFromObjFileMapped(String) 相同，但文件被切分为多块在所有核上并行解析，
+     * 顶点和面的邻接关系也在第二遍中并行建立
+     * @param fileName 文件路径
+     * @return this
+     * @throws IOException
+     */
+    public ObjectModel loadFromObjFileParallel(String fileName) throws IOException {
+        return loadFromObjFileMapped(fileName, true);
+    }
+
+    private ObjectModel loadFromObjFileMapped(String fileName, boolean parallel) throws IOException {
+        setBasePathFromFilename(fileName);
+
+        MappedObjectFileParser parser = new MappedObjectFileParser(Paths.get(fileName));
+        parser.parse(parallel);
+        buildOwned(parser.positions, parser.vertexCount, parser.triangles, parser.faceCount, null, null, parallel);
+        return this;
+    }
+
+    /**
+     * 通过内存映射流式读取.obj 文件，先以顶点聚类粗简化后再构建模型，适用于完整构建所需内存过大的大文件。
+     * 原始的面逐个读入并直接累加到聚类的格子，不保存也不构建邻接表，但所有顶点的坐标仍需放得进内存。
+     * 构建之后仍可调用simplifiedTo(int) 等方法用QEM 继续简化
+     * @param fileName 文件路径
+     * @param gridResolution 包围盒最长边上的格子数
+     * @return this
+     * @throws IOException
+     * @see #clusterVertices(int)
+     */
+    public ObjectModel loadFromObjFileClustered(String fileName, int gridResolution) throws IOException {
+        VertexClustering clustering = new VertexClustering(gridResolution);
+        setBasePathFromFilename(fileName);
+
+        MeshSnapshot mesh = clustering.cluster(new MappedObjectFileParser(Paths.get(fileName)));
+        buildOwned(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount, null, null, true);
+        return this;
+    }
+
+    /**
+     * 从二进制快照文件加载三维模型，快照由saveSnapshot(String, boolean) 生成，
+     * 若快照中包含面的法向量和面积则不再重新计算
+     * @param fileName 文件路径
+     * @return this
+     * @throws IOException
+     * @throws IncorrectFormatException 文件不是快照格式或版本不支持
+     */
+    public ObjectModel loadSnapshot(String fileName) throws IOException {
+        setBasePathFromFilename(fileName);
+
+        MeshSnapshot snapshot = MeshSnapshot.read(Paths.get(fileName));
+        buildOwned(snapshot.positions, snapshot.vertexCount, snapshot.triangles, snapshot.faceCount,
+                snapshot.normals, snapshot.areas, false);
+        return this;
+    }
+
+    /**
+     * 用均匀网格顶点聚类简化当前模型：同一格子中的顶点合并为一个二次方误差最小的代表点，退化的面被删除。
+     * 所需时间与模型大小成正比，但质量不如QEM，适合在simplifiedTo(int) 之前先快速降低模型的规模。
+     * 模型被重新构建，之前的简化状态和渐进网格记录都被丢弃
+     * @param gridResolution 包围盒最长边上的格子数
+     * @throws IllegalArgumentException gridResolution 小于1
+     */
+    public void clusterVertices(int gridResolution) {
+        MeshSnapshot mesh = compactArrays(false);
+        mesh = new VertexClustering(gridResolution).cluster(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount);
+        buildOwned(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount, null, null,
+                (mode & MODE_PARALLEL) == MODE_PARALLEL);
+    }
+
+    /**
+     * 锁定顶点：之后的简化既不删除也不移动这些顶点，用于分块简化时保持块之间的边界。
+     * 锁定只在逐个收缩的模式下保证有效（不能与MODE_PARALLEL 或MODE_RANDOM 同时使用），
+     * 重新加载或构建模型后解除
+     * @param locked 每个顶点是否锁定，长度与模型的顶点槽位数相同，为null 时解除锁定
+     */
+    void lockVertices(boolean[] locked) {
+        if (locked != null && locked.length != vertexSlots) {
+            throw new IllegalArgumentException("Expected " + vertexSlots + " lock flags, got " + locked.length);
+        }
+        lockedVertices = locked;
+        // 锁定改变了收缩代价
+        preparedMode = NOT_PREPARED;
+    }
+
+    /**
+     * 未删除的顶点的索引，顺序与compactArrays 中重新编号后的顺序相同
+     */
+    int[] liveVertices() {
+        int[] live = new int[vN];
+        int n = 0;
+        for (int v = 0; v < vertexSlots; v++) {
+            if (!removedVertices[v]) {
+                live[n++] = v;
+            }
+        }
+        return live;
+    }
+
+    /**
+     * 将当前模型保存为二进制快照，已删除的顶点和面不会被保存
+     * @param fileName 文件路径
+     * @param withFaceData 是否同时保存面的法向量和面积
+     * @throws IOException
+     */
+    public void saveSnapshot(String fileName, boolean withFaceData) throws IOException {
+        compactArrays(withFaceData).write(Paths.get(fileName));
+    }
+
+    /**
+     * 将未删除的顶点和面复制到紧凑的数组中，顶点按原有顺序重新编号
+     * @param withFaceData 是否同时复制面的法向量和面积
+     * @return 紧凑的模型数据
+     */
+    MeshSnapshot compactArrays(boolean withFaceData) {
+        return MeshSnapshot.compact(positions, removedVertices, vertexSlots, vN, triangles, removedFaces, faceSlots, fN,
+                withFaceData ? normals : null, areas);
     }
 
     /**
@@ -72,33 +323,620 @@ public class ObjectModel {
         // ObjectFileParser does lexical analysis
         ObjectFileParser st = new ObjectFileParser(reader);
 
+        // 先将顶点和面读入临时数组，再统一构建模型
+        positions = new float[3 * 1024];
+        triangles = new int[3 * 1024];
+        vertexSlots = 0;
+        faceSlots = 0;
         readFile(st);
 
-//        // 读完所有的面后才能计算顶点的平均法向量
-//        for (Vertex v : vertexList) {
-//            v.computeNormal();
-//        }
-        vN = vertexList.size();
-        fN = faceList.size();
+        buildOwned(positions, vertexSlots, triangles, faceSlots, null, null, false);
         return this;
     }
 
+    /**
+     * 简化到只剩vertexNum 个顶点。优先队列和每个顶点的代价在两次调用之间保留，
+     * 之后以更小的目标再次调用时直接从上次结束的地方继续收缩，只有第一次调用、重新加载模型
+     * 或者改变度量模式之后才需要重新计算全部代价
+     * @param vertexNum 目标顶点数
+     * @throws IllegalArgumentException vertexNum 大于当前的顶点数，简化不能撤销，
+     * 需要更精细的层次时使用MODE_PROGRESSIVE 和extractLOD(int)
+     */
     public void simplifiedTo(int vertexNum) {
-        costHeap = new IndexMinPQ<>(vertexList.size());
+        checkTarget(vertexNum);
+        ensurePrepared();
+        continueSimplification(vertexNum);
+        if (autoCompact) {
+            compact();
+        }
+    }
+
+    /**
+     * 与simplifiedTo(int) 相同，但在达到目标顶点数之前满足下列任一条件时提前结束：
+     * 队列中最小的收缩代价超过maxCost，简化时间超过timeoutMillis，或者token 被取消。
+     * 只在两次收缩（MODE_PARALLEL 时为两轮）之间检查，结束时模型总是完整的，可以直接输出。
+     * 时间和取消标记每STOP_CHECK_INTERVAL 次收缩检查一次，计算初始代价的过程不能中断。
+     * MODE_RANDOM 时没有全局最小的代价，随机选出的收缩中代价最小的超过maxCost 时即结束
+     * @param vertexNum 目标顶点数
+     * @param maxCost 收缩代价的上限，Float.MAX_VALUE 表示不限制
+     * @param timeoutMillis 最长的简化时间（毫秒），从调用时开始计算，不大于0 时不限制
+     * @param token 取消标记，为null 时不能取消
+     * @return 是否达到了目标顶点数
+     * @throws IllegalArgumentException vertexNum 大于当前的顶点数
+     */
+    public boolean simplifiedTo(int vertexNum, float maxCost, long timeoutMillis, CancellationToken token) {
+        checkTarget(vertexNum);
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000 : NO_DEADLINE;
+        ensurePrepared();
+        continueSimplification(vertexNum, maxCost, deadline, token);
+        if (autoCompact) {
+            compact();
+        }
+        return vN <= vertexNum;
+    }
+
+    /**
+     * 整理存储空间：丢弃已删除的顶点和面，其余的按原有顺序重新编号，所有数组和邻接表缩减到实际的大小，
+     * 之后的输出和统计只需遍历剩余的顶点和面。简化状态仍然有效，优先队列按保存的代价重新建立，可以继续简化。
+     * 顶点的索引改变后之前的渐进网格记录无法使用，MODE_PROGRESSIVE 时从整理后的模型重新开始记录
+     */
+    public void compact() {
+        if (vN == vertexSlots && fN == faceSlots) {
+            return;
+        }
+        int[] vertexMap = new int[vertexSlots];
+        int n = 0;
+        for (int v = 0; v < vertexSlots; v++) {
+            vertexMap[v] = removedVertices[v] ? -1 : n++;
+        }
+        int[] faceMap = new int[faceSlots];
+        n = 0;
+        for (int f = 0; f < faceSlots; f++) {
+            faceMap[f] = removedFaces[f] ? -1 : n++;
+        }
+
+        // 顶点的数据，收缩的另一个端点可能已被删除，此时代价已过期，会在使用前重新计算
+        positions = compactArray(positions, 3, vertexMap, vN);
+        quadrics = compactArray(quadrics, QuadricHelper.SIZE, vertexMap, vN);
+        bestPositions = compactArray(bestPositions, 3, vertexMap, vN);
+        costs = compactArray(costs, 1, vertexMap, vN);
+        candidates = compactArray(candidates, 1, vertexMap, vN);
+        for (int v = 0; v < vN; v++) {
+            candidates[v] = candidates[v] >= 0 ? vertexMap[candidates[v]] : -1;
+        }
+        versions = compactArray(versions, 1, vertexMap, vN);
+        costVersions = compactArray(costVersions, 1, vertexMap, vN);
+        quadricVersions = compactArray(quadricVersions, 1, vertexMap, vN);
+        if (lockedVertices != null) {
+            boolean[] locked = new boolean[vN];
+            for (int v = 0; v < vertexSlots; v++) {
+                if (vertexMap[v] >= 0) locked[vertexMap[v]] = lockedVertices[v];
+            }
+            lockedVertices = locked;
+        }
+        if (costHeap != null) {
+            boolean[] excluded = new boolean[vN];
+            for (int v = 0; v < vertexSlots; v++) {
+                if (vertexMap[v] >= 0) excluded[vertexMap[v]] = !costHeap.contains(v);
+            }
+            costHeap = new FloatIndexMinPQ(vN);
+            costHeap.heapify(costs, excluded);
+        }
+        removedVertices = new boolean[vN];
+
+        // 面的数据
+        triangles = compactArray(triangles, 3, faceMap, fN);
+        for (int i = 0; i < fN * 3; i++) {
+            triangles[i] = vertexMap[triangles[i]];
+        }
+        normals = compactArray(normals, 3, faceMap, fN);
+        areas = compactArray(areas, 1, faceMap, fN);
+        faceQuadrics = compactArray(faceQuadrics, QuadricHelper.SIZE, faceMap, fN);
+        removedFaces = new boolean[fN];
+
+        adjacentVertices = adjacentVertices.remap(vertexMap, vN, vertexMap, ADJACENCY_SLACK);
+        adjacentFaces = adjacentFaces.remap(vertexMap, vN, faceMap, ADJACENCY_SLACK);
+        vertexSlots = vN;
+        faceSlots = fN;
+
+        // 以索引为键的缓存和记录都已失效
+        if (edgeCache != null) {
+            edgeCache = new EdgeCostCache(vN * 3, isCostDirected());
+        }
+        if (progressive != null) {
+            progressive = new ProgressiveMesh(vN);
+        }
+    }
+
+    /**
+     * 按映射表复制每个元素占stride 个值的数组，映射为-1 的元素被丢弃
+     */
+    private static float[] compactArray(float[] data, int stride, int[] map, int count) {
+        float[] res = new float[count * stride];
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] >= 0) {
+                System.arraycopy(data, i * stride, res, map[i] * stride, stride);
+            }
+        }
+        return res;
+    }
+
+    private static float[] fitted(float[] data, int length) {
+        return data.length == length ? data : Arrays.copyOf(data, length);
+    }
+
+    private static int[] fitted(int[] data, int length) {
+        return data.length == length ? data : Arrays.copyOf(data, length);
+    }
+
+    private static int[] compactArray(int[] data, int stride, int[] map, int count) {
+        int[] res = new int[count * stride];
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] >= 0) {
+                System.arraycopy(data, i * stride, res, map[i] * stride, stride);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return 当前（未删除的）顶点数目
+     */
+    public int getVertexCount() {
+        return vN;
+    }
+
+    /**
+     * @return 当前（未删除的）三角面数目
+     */
+    public int getFaceCount() {
+        return fN;
+    }
+
+    /**
+     * 一次简化依次得到多个细节层次，每到一个层次就将模型写入对应的.obj 文件。
+     * 写文件在另一个线程上进行，与后续的简化同时进行
+     * @param ratios 从大到小排列的顶点比例，相对于当前的顶点数目
+     * @param files 每个层次的文件路径
+     * @throws IOException
+     * @throws IllegalArgumentException 比例不在(0, 1] 之内或者不是从大到小排列
+     */
+    public void simplifiedToLevels(float[] ratios, Path[] files) throws IOException {
+        if (ratios.length != files.length) {
+            throw new IllegalArgumentException("Expected " + ratios.length + " files but got " + files.length);
+        }
+        simplifiedToLevels(ratios, false, (level, mesh) -> {
+            try (FileChannel channel = FileChannel.open(files[level], StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                new ObjectFileWriter(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount).write(channel);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 一次简化依次得到多个细节层次，每个层次作为一个新的模型返回。
+     * 新模型在另一个线程上构建，与后续的简化同时进行
+     * @param ratios 从大到小排列的顶点比例，相对于当前的顶点数目
+     * @return 每个层次的模型，使用与当前模型相同的度量
+     * @throws IllegalArgumentException 比例不在(0, 1] 之内或者不是从大到小排列
+     */
+    public ObjectModel[] simplifiedToLevels(float[] ratios) {
+        final int lodMode = mode & ~MODE_PROGRESSIVE;
+        try {
+            return simplifiedToLevels(ratios, true, (level, mesh) -> {
+                ObjectModel lod = fromOwnedSnapshot(mesh);
+                lod.setMode(lodMode);
+                return lod;
+            }).toArray(new ObjectModel[0]);
+        } catch (IOException e) {
+            // 构建模型不会产生IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface LevelTask<T> {
+        T run(int level, MeshSnapshot mesh) throws IOException;
+    }
+
+    private <T> List<T> simplifiedToLevels(float[] ratios, boolean withFaceData, LevelTask<T> task)
+            throws IOException {
+        int[] targets = new int[ratios.length];
+        for (int i = 0; i < ratios.length; i++) {
+            if (!(ratios[i] > 0 && ratios[i] <= 1) || (i > 0 && ratios[i] > ratios[i - 1])) {
+                throw new IllegalArgumentException("Ratios must be in (0, 1] and in descending order: "
+                        + Arrays.toString(ratios));
+            }
+            targets[i] = (int) (vN * ratios[i]);
+        }
+
+        ExecutorService output = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "lod-output");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            ensurePrepared();
+            for (int i = 0; i < targets.length; i++) {
+                continueSimplification(targets[i]);
+                // 复制当前的层次后交给另一个线程，简化继续进行
+                final int level = i;
+                final MeshSnapshot mesh = compactArrays(withFaceData);
+                futures.add(output.submit(() -> task.run(level, mesh)));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            output.shutdownNow();
+        }
+    }
+
+    private void checkTarget(int vertexNum) {
+        if (vertexNum > vN) {
+            throw new IllegalArgumentException("Cannot simplify " + vN + " vertices up to " + vertexNum
+                    + "; use MODE_PROGRESSIVE and extractLOD(int) for finer levels");
+        }
+    }
+
+    /**
+     * 简化状态不存在或者与当前的度量模式不一致时重新准备
+     */
+    private void ensurePrepared() {
+        if (preparedMode != mode) {
+            prepareSimplification();
+        }
+    }
+
+    /**
+     * 开始简化之前的准备：计算二次方误差矩阵和收缩代价，建立优先队列
+     */
+    void prepareSimplification() {
+        if ((mode & MODE_PROGRESSIVE) == MODE_PROGRESSIVE) {
+            if (progressive == null) {
+                progressive = new ProgressiveMesh(vN);
+            }
+        } else {
+            // 不记录的收缩会使已有的记录与模型不一致
+            progressive = null;
+        }
+
+        if ((mode & MODE_RANDOM) == MODE_RANDOM) {
+            costHeap = null;
+            edgeCache = null;
+            computeAllQuadrics();
+            preparedMode = mode;
+            return;
+        }
+        costHeap = new FloatIndexMinPQ(vertexSlots);
+        edgeCache = (mode & MODE_EDGE_CACHE) == MODE_EDGE_CACHE ? new EdgeCostCache(vN * 3, isCostDirected()) : null;
         computeAllCost();
+        preparedMode = mode;
+    }
+
+    /**
+     * 边的收缩代价是否与方向有关，有关时边的缓存中两个方向分别缓存。
+     * 法向量度量的代价与边的方向有关；有锁定的顶点时，收缩到锁定的顶点与从锁定的顶点收缩的代价也不同
+     */
+    private boolean isCostDirected() {
+        return (mode & MODE_QEM_N) == MODE_QEM_N || lockedVertices != null;
+    }
 
+    /**
+     * 从当前状态继续简化，直到只剩vertexNum 个顶点，必须先调用prepareSimplification()
+     */
+    private void continueSimplification(int vertexNum) {
+        continueSimplification(vertexNum, Float.MAX_VALUE, NO_DEADLINE, null);
+    }
+
+    /**
+     * @param maxCost 收缩代价的上限
+     * @param deadline 以System.nanoTime() 表示的截止时间，NO_DEADLINE 表示不限制
+     * @param token 取消标记，可以为null
+     */
+    private void continueSimplification(int vertexNum, float maxCost, long deadline, CancellationToken token) {
+        if ((mode & MODE_RANDOM) == MODE_RANDOM) {
+            simplifiedToRandom(vertexNum, maxCost, deadline, token);
+            return;
+        }
+        if ((mode & MODE_PARALLEL) == MODE_PARALLEL) {
+            simplifiedToParallel(vertexNum, maxCost, deadline, token);
+            return;
+        }
+        int steps = 0;
         while (vN > vertexNum) {
 //        	System.out.println("vertex index:" + costHeap.minIndex() + "\t" + "cost:" + costHeap.min());
 
-            // 取出折叠代价最小的顶点
-            int vIndex = costHeap.delMin();
+            // 代价已过期的顶点重新计算后放回队列
+            int vIndex = costHeap.minIndex();
+            if (costVersions[vIndex] != versions[vIndex]) {
+                computeCostAndCandidate(vIndex);
+                costHeap.change(vIndex, costs[vIndex]);
+                continue;
+            }
+
+            if (lockedVertices != null && costs[vIndex] == Float.MAX_VALUE) {
+                // 剩下的收缩都会删除被锁定的顶点
+                break;
+            }
+            if (costs[vIndex] > maxCost || (steps++ % STOP_CHECK_INTERVAL == 0 && stopRequested(deadline, token))) {
+                break;
+            }
 
+            // 取出折叠代价最小的顶点
+            costHeap.delMin();
 
             // 进行一次边收缩
             collapse(vIndex);
         }
     }
 
+    /**
+     * 是否已超过截止时间或者被取消
+     */
+    private static boolean stopRequested(long deadline, CancellationToken token) {
+        return (token != null && token.isCancelled())
+                || (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * 分轮并行简化。每一轮按代价从小到大取出收缩，收缩涉及的区域（两个端点及其相邻顶点）与本轮已选的区域
+     * 相交时推迟到下一轮。区域互不相交的收缩只修改各自区域内的顶点和面，因此可以同时进行；
+     * 收缩完成后再并行重新计算相关顶点的代价，最后按顺序更新优先队列
+     */
+    private void simplifiedToParallel(int vertexNum, float maxCost, long deadline, CancellationToken token) {
+        boolean lazy = (mode & MODE_LAZY) == MODE_LAZY;
+        int[] regionMarks = new int[vertexSlots];
+        int round = 0;
+        int[] batchV0 = new int[0];
+        int[] batchV1 = new int[0];
+        int[] removedFaceCounts = new int[0];
+        int[] deferred = new int[0];
+        boolean overBudget = false;
+
+        while (vN > vertexNum && !costHeap.isEmpty() && !overBudget && !stopRequested(deadline, token)) {
+            round++;
+            int limit = Math.max(1, Math.min(vN - vertexNum, vN / BATCH_FRACTION));
+            if (batchV0.length < limit) {
+                batchV0 = new int[limit];
+                batchV1 = new int[limit];
+                removedFaceCounts = new int[limit];
+            }
+
+            // 按顺序选出本轮的收缩，为v0 预留邻接表的空间，使并行收缩时邻接表不需要移动
+            int n = 0;
+            int deferredCount = 0;
+            while (n < limit && deferredCount < limit && vN - n > vertexNum && !costHeap.isEmpty()) {
+                int vIndex = costHeap.minIndex();
+                if (costVersions[vIndex] != versions[vIndex]) {
+                    computeCostAndCandidate(vIndex);
+                    costHeap.change(vIndex, costs[vIndex]);
+                    continue;
+                }
+                if (costs[vIndex] > maxCost) {
+                    overBudget = true;
+                    break;
+                }
+                costHeap.delMin();
+                if (adjacentVertices.size(vIndex) == 0) {
+                    recordCollapse(-1, vIndex);
+                    removeVertex(vIndex);
+                    vN--;
+                    continue;
+                }
+                int v1Index = candidates[vIndex];
+                if (isRegionMarked(regionMarks, round, vIndex, v1Index)) {
+                    if (deferred.length == deferredCount) {
+                        deferred = Arrays.copyOf(deferred, Math.max(16, deferredCount * 2));
+                    }
+                    deferred[deferredCount++] = vIndex;
+                    continue;
+                }
+                markRegion(regionMarks, round, vIndex, v1Index);
+                // 边界上的边可能只有一个共有的面甚至没有，面的列表按两者之和预留；
+                // 两点互为相邻顶点，v0 的相邻顶点列表先删除v1 再加入，最多为两者之和减2。
+                // 并行收缩时邻接表的行不能扩展，否则会移动共享的数组
+                adjacentFaces.ensureCapacity(vIndex, adjacentFaces.size(vIndex) + adjacentFaces.size(v1Index));
+                adjacentVertices.ensureCapacity(vIndex, adjacentVertices.size(vIndex) + adjacentVertices.size(v1Index) - 2);
+                // 本轮的收缩互不相关，可以在收缩之前按选出的顺序记录
+                recordCollapse(vIndex, v1Index);
+                batchV0[n] = vIndex;
+                batchV1[n] = v1Index;
+                n++;
+            }
+
+            // 并行收缩
+            final int[] v0s = batchV0;
+            final int[] v1s = batchV1;
+            final int[] faceCounts = removedFaceCounts;
+            forEachChunk(n, BATCH_CHUNK, (from, to, scratch) -> {
+                for (int b = from; b < to; b++) {
+                    faceCounts[b] = contract(v0s[b], v1s[b]);
+                }
+            });
+            for (int b = 0; b < n; b++) {
+                removeVertex(v1s[b]);
+                fN -= faceCounts[b];
+                vN--;
+            }
+
+            // 推迟的顶点放回队列，它们的代价可能在下面被更新
+            for (int i = 0; i < deferredCount; i++) {
+                int v = deferred[i];
+                if (!removedVertices[v] && !costHeap.contains(v)) {
+                    costHeap.insert(v, costs[v]);
+                }
+            }
+
+            // 不同收缩的相邻顶点互不相同，可以并行重新计算代价
+            forEachChunk(n, BATCH_CHUNK, (from, to, scratch) -> {
+                for (int b = from; b < to; b++) {
+                    int v0 = v0s[b];
+                    if (!lazy) {
+                        for (int k = 0; k < adjacentVertices.size(v0); k++) {
+                            computeCostAndCandidate(adjacentVertices.get(v0, k), scratch);
+                        }
+                    }
+                    computeCostAndCandidate(v0, scratch);
+                }
+            });
+            for (int b = 0; b < n; b++) {
+                int v0 = v0s[b];
+                for (int k = 0; k < adjacentVertices.size(v0); k++) {
+                    int i = adjacentVertices.get(v0, k);
+                    if (lazy) {
+                        versions[i]++;
+                    } else {
+                        costHeap.change(i, costs[i]);
+                    }
+                }
+                costHeap.insert(v0, costs[v0]);
+                if (costHeap.contains(v1s[b])) {
+                    costHeap.delete(v1s[b]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 不使用优先队列的随机简化（multiple-choice）。每一步随机选取RANDOM_CHOICES 个未删除的顶点，
+     * 各自随机取一条相邻的边计算收缩代价，收缩其中代价最小的一条
+     */
+    private void simplifiedToRandom(int vertexNum, float maxCost, long deadline, CancellationToken token) {
+        SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+        // 未删除的顶点的列表，删除顶点时与最后一个交换，保证可以均匀地随机选取
+        int[] live = new int[vN];
+        int[] livePositions = new int[vertexSlots];
+        int n = 0;
+        for (int v = 0; v < vertexSlots; v++) {
+            if (!removedVertices[v]) {
+                livePositions[v] = n;
+                live[n++] = v;
+            }
+        }
+
+        int steps = 0;
+        while (vN > vertexNum && n > 0) {
+            if (steps++ % STOP_CHECK_INTERVAL == 0 && stopRequested(deadline, token)) {
+                break;
+            }
+            int best = -1;
+            float bestCost = Float.MAX_VALUE;
+            for (int c = 0; c < RANDOM_CHOICES; c++) {
+                int v = live[random.nextInt(n)];
+                int size = adjacentVertices.size(v);
+                if (size == 0) {
+                    // 孤立的点优先删除
+                    best = v;
+                    break;
+                }
+                int u = adjacentVertices.get(v, random.nextInt(size));
+                float cost = computeCostCollapseTo(v, u, scratch);
+                if (best == -1 || cost < bestCost) {
+                    best = v;
+                    bestCost = cost;
+                    candidates[v] = u;
+                    System.arraycopy(scratch, SCRATCH_POSITION, bestPositions, v * 3, 3);
+                }
+            }
+
+            int removed = best;
+            if (adjacentVertices.size(best) > 0 && bestCost > maxCost) {
+                break;
+            }
+            if (adjacentVertices.size(best) > 0) {
+                removed = candidates[best];
+                recordCollapse(best, removed);
+                fN -= contract(best, removed);
+            } else {
+                recordCollapse(-1, best);
+            }
+            removeVertex(removed);
+            vN--;
+            int last = live[--n];
+            live[livePositions[removed]] = last;
+            livePositions[last] = livePositions[removed];
+        }
+    }
+
+    private boolean isRegionMarked(int[] regionMarks, int round, int v0, int v1) {
+        if (regionMarks[v0] == round || regionMarks[v1] == round) {
+            return true;
+        }
+        for (int k = 0; k < adjacentVertices.size(v0); k++) {
+            if (regionMarks[adjacentVertices.get(v0, k)] == round) {
+                return true;
+            }
+        }
+        for (int k = 0; k < adjacentVertices.size(v1); k++) {
+            if (regionMarks[adjacentVertices.get(v1, k)] == round) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markRegion(int[] regionMarks, int round, int v0, int v1) {
+        regionMarks[v0] = round;
+        regionMarks[v1] = round;
+        for (int k = 0; k < adjacentVertices.size(v0); k++) {
+            regionMarks[adjacentVertices.get(v0, k)] = round;
+        }
+        for (int k = 0; k < adjacentVertices.size(v1); k++) {
+            regionMarks[adjacentVertices.get(v1, k)] = round;
+        }
+    }
+
+    /**
+     * 从以MODE_PROGRESSIVE 简化时的记录中提取一个细节层次，不改变当前模型。
+     * 连续提取时只重做或撤销两个层次之间的收缩
+     * @param vertexCount 顶点数目，在简化后与开始记录时的顶点数目之间
+     * @return 新的模型，使用与当前模型相同的度量
+     * @throws IllegalStateException 没有记录简化过程
+     * @throws IllegalArgumentException 顶点数目超出记录的范围
+     */
+    public ObjectModel extractLOD(int vertexCount) {
+        if (progressive == null) {
+            throw new IllegalStateException("No progressive record, simplify with MODE_PROGRESSIVE first");
+        }
+        if (!progressive.hasState()) {
+            progressive.reset(positions, vertexSlots, triangles, faceSlots, removedVertices, removedFaces, vN, fN);
+        }
+        ObjectModel lod = fromOwnedSnapshot(progressive.extract(vertexCount));
+        lod.setMode(mode & ~MODE_PROGRESSIVE);
+        return lod;
+    }
+
+    /**
+     * 与extractLOD(int) 相同，顶点数目为开始记录时的ratio 倍
+     * @param ratio 顶点数目的比例
+     * @return 新的模型
+     */
+    public ObjectModel extractLOD(float ratio) {
+        if (progressive == null) {
+            throw new IllegalStateException("No progressive record, simplify with MODE_PROGRESSIVE first");
+        }
+        if (ratio > 1 || ratio < 0) {
+            throw new IllegalArgumentException("Ratio " + ratio + " out of range [0, 1]");
+        }
+        int vertexCount = (int) (progressive.getOriginalVertexCount() * ratio);
+        return extractLOD(Math.max(vertexCount, progressive.getBaseVertexCount()));
+    }
+
     public void simplifiedToRatio(float ratio) {
         if (ratio >= 1 || ratio < 0) {
             return;
@@ -106,108 +944,187 @@ public class ObjectModel {
 
         simplifiedTo((int) (vN * ratio));
     }
-    
+
     public void writeTo(OutputStream os) {
-    	PrintWriter writer = new PrintWriter(os);
-    	
-    	for (Face face : faceList) {
-    		if (face == null) {
-    			continue;
-    		}
-    		StringBuilder stringBuilder = new StringBuilder();
-    		Vertex v1 = vertexList.get(face.verticesIndex[0]);
-    		stringBuilder.append(v1.position.x + " " + v1.position.y + " " + v1.position.z + " ");
-    		Vertex v2 = vertexList.get(face.verticesIndex[1]);
-    		stringBuilder.append(v2.position.x + " " + v2.position.y + " " + v2.position.z + " ");
-    		Vertex v3 = vertexList.get(face.verticesIndex[2]);
-    		stringBuilder.append(v3.position.x + " " + v3.position.y + " " + v3.position.z + " ");
-    		Vector normal = face.normal;
-    		stringBuilder.append(normal.x + " " + normal.y + " " + normal.z);
-    		
-    		writer.println(stringBuilder.toString());
-    		writer.flush();
-    	}
-    	writer.close();
+        // 整个模型写完后才刷新一次，每行复用同一个StringBuilder，输出与逐行拼接字符串时相同
+        PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(os, StandardCharsets.US_ASCII), TEXT_BUFFER_SIZE));
+        StringBuilder stringBuilder = new StringBuilder(256);
+        for (int f = 0; f < faceSlots; f++) {
+            if (removedFaces[f]) {
+                continue;
+            }
+            stringBuilder.setLength(0);
+            for (int k = 0; k < 3; k++) {
+                int v = triangles[f * 3 + k] * 3;
+                stringBuilder.append(positions[v]).append(' ').append(positions[v + 1]).append(' ')
+                        .append(positions[v + 2]).append(' ');
+            }
+            stringBuilder.append(normals[f * 3]).append(' ').append(normals[f * 3 + 1]).append(' ')
+                    .append(normals[f * 3 + 2]);
+            writer.println(stringBuilder);
+        }
+        writer.close();
+    }
+
+    /**
+     * 以二进制格式将模型写入输出流，格式见BinaryMeshWriter，不关闭输出流
+     * @param os 输出流
+     * @param indexed true 时共享的顶点只发送一次，否则与writeTo(OutputStream) 一样逐面发送坐标和法向量
+     * @throws IOException
+     */
+    public void writeBinaryTo(OutputStream os, boolean indexed) throws IOException {
+        new BinaryMeshWriter(os).write(compactArrays(true), indexed);
+        os.flush();
+    }
+
+    /**
+     * 以二进制格式将模型写入通道，格式见BinaryMeshWriter，不关闭通道
+     * @param channel 输出通道
+     * @param indexed true 时共享的顶点只发送一次，否则逐面发送坐标和法向量
+     * @throws IOException
+     */
+    public void writeBinaryTo(WritableByteChannel channel, boolean indexed) throws IOException {
+        new BinaryMeshWriter(channel).write(compactArrays(true), indexed);
     }
-    
+
+    /**
+     * 将模型写入当前目录下的new_model.obj 文件
+     */
     public void writeObjFile() {
-    	try (FileWriter fw = new FileWriter("new_model.obj")) {
-//			fw = new FileWriter("new_model.txt");
-			String ls = System.lineSeparator();
-			int[] table = new int[vertexList.size()];
-			int count = 1;
-			for (int i = 0; i < vertexList.size(); i++) {
-				Vertex v = vertexList.get(i);
-				if (v == null) continue;
-				table[i] = count;
-				count++;
-				fw.write(String.format("v %f %f %f%s", 
-						v.position.x, v.position.y, v.position.z, ls));
-			}
-			for (Face f : faceList) {
-				if (f == null) continue;
-				fw.write(String.format("f %d %d %d%s", 
-						table[f.verticesIndex[0]], 
-						table[f.verticesIndex[1]], 
-						table[f.verticesIndex[2]], ls));
-			}
-			fw.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+        try {
+            writeObjFile(Paths.get("new_model.obj"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 将模型以.obj 格式写入文件，已删除的顶点和面不会被写出
+     * @param path 文件路径
+     * @throws IOException
+     */
+    public void writeObjFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeObjFile(channel);
+        }
+    }
+
+    /**
+     * 将模型以.obj 格式写入输出流，不关闭输出流
+     * @param os 输出流
+     * @throws IOException
+     */
+    public void writeObjFile(OutputStream os) throws IOException {
+        writeObjFile(Channels.newChannel(os));
+        os.flush();
+    }
+
+    /**
+     * 将模型以.obj 格式写入通道，顶点和面分块并行格式化后按顺序写出，不关闭通道
+     * @param channel 输出通道
+     * @throws IOException
+     */
+    public void writeObjFile(WritableByteChannel channel) throws IOException {
+        MeshSnapshot mesh = compactArrays(false);
+        new ObjectFileWriter(mesh.positions, mesh.vertexCount, mesh.triangles, mesh.faceCount).write(channel);
     }
-    
+
     public float calQAve() {
     	float ave = 0;
     	int n = 0;
-    	for (Face f : faceList) {
-    		if (f == null) continue;
+    	for (int f = 0; f < faceSlots; f++) {
+    		if (removedFaces[f]) continue;
     		n++;
-    		Vertex v1 = vertexList.get(f.verticesIndex[0]);
-    		Vertex v2 = vertexList.get(f.verticesIndex[1]);
-    		Vertex v3 = vertexList.get(f.verticesIndex[2]);
-    		float l1 = Vector.minus(v1.position, v2.position).magnitude();
-    		float l2 = Vector.minus(v2.position, v3.position).magnitude();
-    		float l3 = Vector.minus(v1.position, v3.position).magnitude();
-    		float q = (float) (4 * Math.sqrt(3.0) * f.area / (l1 * l1 + l2 * l2 + l3 * l3));
-    		if (q > 1) q = 1;
-    		if (q < 0) q = 0;
+    		float q = faceQuality(f);
     		ave = ave + (q - ave) / n;
     	}
     	return ave;
     }
-    
+
     public float calQMSE(float ave) {
     	float mse = 0;
     	int n = 0;
-    	for (Face f : faceList) {
-    		if (f == null) continue;
+    	for (int f = 0; f < faceSlots; f++) {
+    		if (removedFaces[f]) continue;
     		n++;
-    		Vertex v1 = vertexList.get(f.verticesIndex[0]);
-    		Vertex v2 = vertexList.get(f.verticesIndex[1]);
-    		Vertex v3 = vertexList.get(f.verticesIndex[2]);
-    		float l1 = Vector.minus(v1.position, v2.position).magnitude();
-    		float l2 = Vector.minus(v2.position, v3.position).magnitude();
-    		float l3 = Vector.minus(v1.position, v3.position).magnitude();
-    		float q = (float) (4 * Math.sqrt(3.0) * f.area / (l1 * l1 + l2 * l2 + l3 * l3));
-    		if (q > 1) q = 1;
-    		if (q < 0) q = 0;
+    		float q = faceQuality(f);
     		float e = (q - ave) * (q - ave);
     		mse = mse + (e - mse) / n;
     	}
     	return mse;
     }
-    
+
+    /**
+     * 一次遍历统计面的质量：平均值和方差（与calQAve()、calQMSE(float) 相同）、最高和最低的质量、
+     * 边长的范围、纵横比直方图以及退化的面的数目。各块在所有核上分别统计后合并，不为每个面分配对象
+     * @return 统计结果
+     */
+    public QualityReport evaluateQuality() {
+        int chunks = (faceSlots + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        return range(chunks, true).collect(QualityReport::new, (report, c) -> {
+            int end = Math.min(faceSlots, (c + 1) * PARALLEL_CHUNK);
+            for (int f = c * PARALLEL_CHUNK; f < end; f++) {
+                if (removedFaces[f]) continue;
+                int v1 = triangles[f * 3], v2 = triangles[f * 3 + 1], v3 = triangles[f * 3 + 2];
+                report.add(distance(v1, v2), distance(v2, v3), distance(v1, v3), areas[f]);
+            }
+        }, QualityReport::merge);
+    }
+
+    /**
+     * 测量当前模型与原模型表面之间的偏差（Hausdorff 距离和均方根误差），每个面取9个采样点
+     * @param original 原模型，例如简化之前加载的另一个实例
+     * @return 偏差，正向为原模型到当前模型
+     * @throws IllegalArgumentException 某个模型没有面
+     */
+    public SurfaceDeviation measureDeviation(ObjectModel original) {
+        return measureDeviation(original, 3);
+    }
+
+    /**
+     * 与measureDeviation(ObjectModel) 相同，每个面取samplesPerEdge 的平方个采样点
+     * @param original 原模型
+     * @param samplesPerEdge 每个面的每条边分为几段，不小于1
+     * @return 偏差，正向为原模型到当前模型
+     */
+    public SurfaceDeviation measureDeviation(ObjectModel original, int samplesPerEdge) {
+        return SurfaceDeviation.measure(original.compactArrays(false), compactArrays(false), samplesPerEdge);
+    }
+
+    /**
+     * 三角面的质量，等边三角形为1，退化的三角形为0
+     */
+    private float faceQuality(int f) {
+        float l1 = distance(triangles[f * 3], triangles[f * 3 + 1]);
+        float l2 = distance(triangles[f * 3 + 1], triangles[f * 3 + 2]);
+        float l3 = distance(triangles[f * 3], triangles[f * 3 + 2]);
+        float q = (float) (4 * Math.sqrt(3.0) * areas[f] / (l1 * l1 + l2 * l2 + l3 * l3));
+        if (q > 1) q = 1;
+        if (q < 0) q = 0;
+        return q;
+    }
+
+    private float distance(int v1, int v2) {
+        float dx = positions[v1 * 3] - positions[v2 * 3];
+        float dy = positions[v1 * 3 + 1] - positions[v2 * 3 + 1];
+        float dz = positions[v1 * 3 + 2] - positions[v2 * 3 + 2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
     public void print() {
     	System.out.println(basePath);
-    	for (Vertex v : vertexList) {
-            if (v != null) {
-				System.out.println("Vertex:" + v);
+    	for (int v = 0; v < vertexSlots; v++) {
+            if (!removedVertices[v]) {
+				System.out.println("Vertex:Position:(" + positions[v * 3] + "," + positions[v * 3 + 1] + ","
+						+ positions[v * 3 + 2] + ")");
 			}
         }
-        for (Face f : faceList) {
-            if (f != null) {
-				System.out.println("Face:" + f + " Normal:" + f.normal);
+        for (int f = 0; f < faceSlots; f++) {
+            if (!removedFaces[f]) {
+				System.out.println("Face:(" + triangles[f * 3] + "," + triangles[f * 3 + 1] + "," + triangles[f * 3 + 2]
+						+ ") Normal:(" + normals[f * 3] + "," + normals[f * 3 + 1] + "," + normals[f * 3 + 2] + ")");
 			}
         }
         System.out.println("顶点： " + vN + "面： " + fN);
@@ -246,19 +1163,22 @@ public class ObjectModel {
      * @throws ParsingErrorException
      */
     void readVertex(ObjectFileParser st) throws ParsingErrorException {
-        Vertex p = new Vertex();
+        if (positions.length < (vertexSlots + 1) * 3) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        int offset = vertexSlots * 3;
 
         st.getNumber();
-        p.position.x = (float) st.nval;
+        positions[offset] = (float) st.nval;
         st.getNumber();
-        p.position.y = (float) st.nval;
+        positions[offset + 1] = (float) st.nval;
         st.getNumber();
-        p.position.z = (float) st.nval;
+        positions[offset + 2] = (float) st.nval;
 
         st.skipToNextLine();
 
         // Add this vertex to the array
-        vertexList.add(p);
+        vertexSlots++;
 
 //        if (BuildConfig.DEBUG && LoggerConfig.ANDROID_DEBUG) {
 //            Log.d(TAG, "readVertex: " + p);
@@ -266,11 +1186,15 @@ public class ObjectModel {
     } // End of readVertex
 
     void readFace(ObjectFileParser st) throws ParsingErrorException {
-        ArrayList<Integer> points = new ArrayList<>();                         // 面的三个顶点的索引列表
+        int[] points = new int[3];                         // 面的三个顶点的索引列表
+        int n = 0;
 
         while (st.ttype != StreamTokenizer.TT_EOL) {
             st.getNumber();
-            points.add((int) st.nval - 1);
+            if (n < 3) {
+                points[n] = (int) st.nval - 1;
+            }
+            n++;
 //			st.getNumber();
             st.getToken();
             while (st.ttype == '/') {
@@ -282,24 +1206,14 @@ public class ObjectModel {
             else st.pushBack();
         }
 
-        assert (points.size() == 3);
+        assert (n == 3);
 
-        Face face = new Face(points.get(0), points.get(1), points.get(2));
-        faceList.add(face);
-        int faceIndex = faceList.size() - 1;
-
-        // 读取面的同时，完善相关顶点的属性
-        for (int i = 0; i < points.size(); i++) {
-            Vertex vertex1 = vertexList.get(points.get(i));
-            vertex1.adjacentFacesIndex.add(faceIndex);
-//            vertex1.normal = face.normal;
-
-            for (int j = i + 1; j < points.size(); j++) {
-                Vertex vertex2 = vertexList.get(points.get(j));
-                vertex1.adjacentVerticesIndex.add(points.get(j));
-                vertex2.adjacentVerticesIndex.add(points.get(i));
-            }
+        // 面的法向量和相关顶点的邻接关系在build() 中统一计算
+        if (triangles.length < (faceSlots + 1) * 3) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
         }
+        System.arraycopy(points, 0, triangles, faceSlots * 3, 3);
+        faceSlots++;
         st.skipToNextLine();
 
 //        if (BuildConfig.DEBUG && LoggerConfig.ANDROID_DEBUG) {
@@ -307,6 +1221,113 @@ public class ObjectModel {
 //        }
     } // End of readFace
 
+    /**
+     * 由顶点坐标数组和面索引数组构建模型，替换模型中原有的数据。数组会被复制，调用者可以继续使用
+     * @param positions 顶点坐标，每个顶点3个float
+     * @param vertexCount 顶点数目
+     * @param triangles 面的顶点索引（从0开始），每个面3个int
+     * @param faceCount 面的数目
+     * @param normals 面的单位法向量，每个面3个float，为null 时重新计算
+     * @param areas 面的面积，为null 时重新计算
+     * @param parallel 是否并行构建
+     * @throws ParsingErrorException 面的顶点索引越界
+     */
+    void build(float[] positions, int vertexCount, int[] triangles, int faceCount,
+               float[] normals, float[] areas, boolean parallel) throws ParsingErrorException {
+        buildOwned(Arrays.copyOf(positions, vertexCount * 3), vertexCount, Arrays.copyOf(triangles, faceCount * 3), faceCount,
+                normals != null ? Arrays.copyOf(normals, faceCount * 3) : null,
+                normals != null ? Arrays.copyOf(areas, faceCount) : null, parallel);
+    }
+
+    /**
+     * 与build 相同，但直接使用传入的数组而不复制，用于加载时新分配、不再被别处使用的数组。
+     * 数组比需要的长时截取到需要的长度
+     */
+    private void buildOwned(float[] positions, int vertexCount, int[] triangles, int faceCount,
+                            float[] normals, float[] areas, boolean parallel) throws ParsingErrorException {
+        costHeap = null;
+        edgeCache = null;
+        progressive = null;
+        lockedVertices = null;
+        preparedMode = NOT_PREPARED;
+
+        for (int i = 0; i < faceCount * 3; i++) {
+            if (triangles[i] < 0 || triangles[i] >= vertexCount) {
+                throw new ParsingErrorException("Vertex index " + (triangles[i] + 1) + " out of range in face " + (i / 3 + 1));
+            }
+        }
+
+        this.positions = fitted(positions, vertexCount * 3);
+        this.quadrics = new float[vertexCount * QuadricHelper.SIZE];
+        this.bestPositions = new float[vertexCount * 3];
+        this.costs = new float[vertexCount];
+        this.candidates = new int[vertexCount];
+        this.removedVertices = new boolean[vertexCount];
+        this.versions = new int[vertexCount];
+        this.costVersions = new int[vertexCount];
+        this.quadricVersions = new int[vertexCount];
+        this.vertexSlots = vertexCount;
+
+        this.triangles = fitted(triangles, faceCount * 3);
+        this.faceQuadrics = new float[faceCount * QuadricHelper.SIZE];
+        this.removedFaces = new boolean[faceCount];
+        this.faceSlots = faceCount;
+        if (normals != null) {
+            this.normals = fitted(normals, faceCount * 3);
+            this.areas = fitted(areas, faceCount);
+        } else {
+            this.normals = new float[faceCount * 3];
+            this.areas = new float[faceCount];
+            range(faceCount, parallel).forEach(this::computeNormalAndArea);
+        }
+
+        // 按顶点整理相邻面的索引，每个顶点只修改自己的邻接表中的一行，因此可以并行
+        int[] start = new int[vertexCount + 1];
+        for (int i = 0; i < faceCount * 3; i++) {
+            start[triangles[i] + 1]++;
+        }
+        for (int i = 0; i < vertexCount; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] incidentFaces = new int[faceCount * 3];
+        int[] fill = Arrays.copyOf(start, vertexCount);
+        for (int i = 0; i < faceCount * 3; i++) {
+            incidentFaces[fill[triangles[i]]++] = i / 3;
+        }
+
+        // 相邻面的数目是确定的，相邻顶点的数目不超过相邻面数目的两倍，额外的空间用于简化时原地修改
+        int[] faceCapacities = new int[vertexCount];
+        int[] vertexCapacities = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            int n = start[i + 1] - start[i];
+            faceCapacities[i] = n + ADJACENCY_SLACK;
+            vertexCapacities[i] = n * 2;
+        }
+        adjacentFaces = new AdjacencyList(faceCapacities);
+        adjacentVertices = new AdjacencyList(vertexCapacities);
+
+        range(vertexCount, parallel).forEach(vIndex -> {
+            for (int k = start[vIndex]; k < start[vIndex + 1]; k++) {
+                int faceIndex = incidentFaces[k];
+                adjacentFaces.add(vIndex, faceIndex);
+                // 与读取面的顺序相同，加入面的另外两个顶点
+                for (int i = faceIndex * 3; i < faceIndex * 3 + 3; i++) {
+                    if (triangles[i] != vIndex) {
+                        adjacentVertices.add(vIndex, triangles[i]);
+                    }
+                }
+            }
+        });
+
+        vN = vertexCount;
+        fN = faceCount;
+    }
+
+    private static IntStream range(int n, boolean parallel) {
+        IntStream stream = IntStream.range(0, n);
+        return parallel ? stream.parallel() : stream;
+    }
+
     /**
      * 设置基本路径
      * @param pathName 路径名
@@ -335,314 +1356,416 @@ public class ObjectModel {
         }
     }
 
+    /**
+     * 计算所有面和顶点的二次方误差矩阵以及所有顶点的收缩代价，并建立优先队列。
+     * 每一步中各个面或顶点只写入自己的数据，因此分块在ForkJoin 公共线程池上并行计算，每一块使用自己的临时空间
+     */
     private void computeAllCost() {
-        for (Face f : faceList) {
-            f.computeK();
-        }
-        for (Vertex v : vertexList) {
-            v.computeQ();
-        }
-        for (int i = 0; i < vertexList.size(); i++) {
-            Vertex v = vertexList.get(i);
-            v.computeCostAndCandidate();
-            costHeap.insert(i, v.cost);
-        }
+        computeAllQuadrics();
+        forEachChunk(vertexSlots, (from, to, scratch) -> {
+            for (int v = from; v < to; v++) {
+                if (!removedVertices[v]) computeCostAndCandidate(v, scratch);
+            }
+        });
+        costHeap.heapify(costs, removedVertices);
+    }
+
+    /**
+     * 计算所有面的基础二次方误差矩阵和所有顶点的二次方误差矩阵
+     */
+    private void computeAllQuadrics() {
+        forEachChunk(faceSlots, (from, to, scratch) -> {
+            for (int f = from; f < to; f++) {
+                if (!removedFaces[f]) computeK(f);
+            }
+        });
+        forEachChunk(vertexSlots, (from, to, scratch) -> {
+            for (int v = from; v < to; v++) {
+                if (!removedVertices[v]) computeQ(v);
+            }
+        });
+    }
+
+    /**
+     * 将[0, n) 分为若干块并行处理，n 不超过一块时直接在当前线程处理
+     */
+    private static void forEachChunk(int n, ChunkTask task) {
+        forEachChunk(n, PARALLEL_CHUNK, task);
+    }
+
+    private static void forEachChunk(int n, int chunkSize, ChunkTask task) {
+        int chunks = (n + chunkSize - 1) / chunkSize;
+        range(chunks, chunks > 1).forEach(c ->
+                task.run(c * chunkSize, Math.min(n, (c + 1) * chunkSize), new float[SCRATCH_SIZE]));
+    }
+
+    private interface ChunkTask {
+        void run(int from, int to, float[] scratch);
     }
 
     private void collapse(int vIndex) {
-        // 待收缩的两个点
-        Vertex v0 = vertexList.get(vIndex);
-        Vertex v1 = vertexList.get(v0.candidateIndex);
+        // 如果是孤立的点，则直接删除
+        if (adjacentVertices.size(vIndex) == 0) {
+            recordCollapse(-1, vIndex);
+            removeVertex(vIndex);
+            vN = vN - 1;
+            return;
+        }
 
         // 待收缩的两个点的索引
         final int v0Index = vIndex;
-        final int v1Index = v0.candidateIndex;
+        final int v1Index = candidates[vIndex];
 
-//        // 如果是孤立的点，则直接删除
-//        if (v0.cost == 0) {
-//            vertexList.set(v0Index, null);
-//            costHeap.delete(v0Index);
-//            return;
-//        }
+        recordCollapse(v0Index, v1Index);
+        fN -= contract(v0Index, v1Index);
+        removeVertex(v1Index);
 
-        // 获取v0,v1相邻的面列表，并删除共有的面
-        Set<Integer> fIndices = new HashSet<>();
-        fIndices.addAll(v0.adjacentFacesIndex);
-        fIndices.addAll(v1.adjacentFacesIndex);
-        for (int vfIndex : v0.adjacentFacesIndex) {
-            Face f = faceList.get(vfIndex);
-            if (f.hasVertex(v1Index)) {
-                // 删除共有的面，不使用remove() 方法是因为不能改变列表的索引
-                faceList.set(vfIndex, null);
-                fIndices.remove(vfIndex);
-
-                // 更新另外一个顶点的面索引
-                for (int i : f.verticesIndex) {
-                    if (i != v0Index && i != v1Index) {
-                        Vertex v = vertexList.get(i);
-                        v.adjacentFacesIndex.remove(vfIndex);
-                    }
-                }
+        // 重新计算相关顶点的法向量、二次误差矩阵和消耗
+        // 如果需要采用预测-校正的方法，请取消下面注释
+//        for (int k = 0; k < adjacentVertices.size(v0Index); k++) {
+//            computeQ(adjacentVertices.get(v0Index, k));
+//        }
+//        computeQ(v0Index);
+
+        boolean lazy = (mode & MODE_LAZY) == MODE_LAZY;
+        for (int k = 0; k < adjacentVertices.size(v0Index); k++) {
+            int i = adjacentVertices.get(v0Index, k);
+            if (lazy) {
+                versions[i]++;
+            } else {
+                computeCostAndCandidate(i);
+                costHeap.change(i, costs[i]);
             }
         }
+        computeCostAndCandidate(v0Index);
+        costHeap.insert(v0Index, costs[v0Index]);
+        costHeap.delete(v1Index);
 
-        // 获取v0,v1相邻的顶点列表，不包括v0和v1
-        Set<Integer> vIndices = new HashSet<>();
-        vIndices.addAll(v0.adjacentVerticesIndex);
-        vIndices.addAll(v1.adjacentVerticesIndex);
-        vIndices.remove(v0Index);
-        vIndices.remove(v1Index);
+        // 顶点数量减1，三角面数量在删除共有的面时已经更新（边界上的边只有一个共有的面）
+        vN = vN - 1;
+    }
 
-        // 获取新顶点，为了缩减队列的长度，将新顶点放在原顶点v0的位置，删除v1（置为null）
-        Vertex newVertex = new Vertex(v0.bestPosition);
-        vertexList.set(v0Index, newVertex);
-        vertexList.set(v1Index, null);
-        // 如果需要采用预测-校正的方法，可以将下面两行注释掉
-        newVertex.Q = new float[16];
-        MatrixHelper.add(newVertex.Q, v0.Q, v1.Q);
+    /**
+     * 将v1 合并到v0：删除两点共有的面，v1 其余的面和相邻顶点转移给v0，v0 移到最佳位置并累加二次方误差矩阵。
+     * 不修改优先队列，也不删除v1，只修改两点及其相邻顶点和相邻面的数据，
+     * 因此区域互不相交的收缩可以并行进行，此时v0 在邻接表中必须已预留足够的空间
+     * @return 删除的面的数目
+     */
+    private int contract(final int v0Index, final int v1Index) {
+        int removed = 0;
+
+        // 删除v0,v1共有的面，v0 的相邻面中只保留其它的面
+        for (int k = 0; k < adjacentFaces.size(v0Index); ) {
+            int vfIndex = adjacentFaces.get(v0Index, k);
+            if (!hasVertex(vfIndex, v1Index)) {
+                k++;
+                continue;
+            }
+            // 删除共有的面，只做标记是因为不能改变其它面的索引
+            removedFaces[vfIndex] = true;
+            adjacentFaces.remove(v0Index, vfIndex);
+            removed++;
+
+            // 更新另外一个顶点的面索引
+            for (int j = vfIndex * 3; j < vfIndex * 3 + 3; j++) {
+                int i = triangles[j];
+                if (i != v0Index && i != v1Index) {
+                    adjacentFaces.remove(i, vfIndex);
+                }
+            }
+        }
 
-        // 更新相邻的面
-        for (int i : fIndices) {
-            Face f = faceList.get(i);
-            f.replaceVertex(v1Index, v0Index);     // 只有v1相邻的面需要更新顶点位置
-            f.update();                           // 所有的面都需要更新法向量和基础二次方误差矩阵
-            newVertex.adjacentFacesIndex.add(i);
+        // v1 其余的相邻面转移给v0，只有v1相邻的面需要更新顶点
+        for (int k = 0; k < adjacentFaces.size(v1Index); k++) {
+            int i = adjacentFaces.get(v1Index, k);
+            if (!removedFaces[i]) {
+                replaceVertex(i, v1Index, v0Index);
+                adjacentFaces.add(v0Index, i);
+            }
         }
 
-        // 更新相邻的顶点
-        for (int i : vIndices) {
-            Vertex v = vertexList.get(i);
-            v.adjacentVerticesIndex.remove(v1Index);
-            v.adjacentVerticesIndex.add(v0Index);
-            newVertex.adjacentVerticesIndex.add(i);
+        // v1 的相邻顶点改为与v0 相邻
+        adjacentVertices.remove(v0Index, v1Index);
+        for (int k = 0; k < adjacentVertices.size(v1Index); k++) {
+            int i = adjacentVertices.get(v1Index, k);
+            if (i != v0Index) {
+                adjacentVertices.replace(i, v1Index, v0Index);
+                adjacentVertices.add(v0Index, i);
+            }
         }
 
-        // 重新计算相关顶点的法向量、二次误差矩阵和消耗
-        // 如果需要采用预测-校正的方法，请取消下面注释
-//        for (int i : vIndices) {
-////            vertexList.get(i).computeNormal();  // 暂时不需要用到法向量
-//            vertexList.get(i).computeQ();
-//        }
-////        newVertex.computeNormal();
-//        newVertex.computeQ();
-        
-        for (int i : vIndices) {
-            Vertex v = vertexList.get(i);
-            v.computeCostAndCandidate();
-            costHeap.change(i, v.cost);
-        }
-        newVertex.computeCostAndCandidate();
-        costHeap.insert(v0Index, newVertex.cost);
-        costHeap.delete(v1Index);
+        // 新顶点放在原顶点v0的位置，为了缩减队列的长度，调用者随后删除v1（只做标记）
+        System.arraycopy(bestPositions, v0Index * 3, positions, v0Index * 3, 3);
+        // 如果需要采用预测-校正的方法，可以将下面一行注释掉
+        addQuadrics(v0Index, v1Index);
 
-        // 顶点数量减1
-        vN = vN - 1;
-        // 三角面数量减2
-        fN = fN - 2;
+        // 所有相邻的面都需要更新法向量和面积
+        for (int k = 0; k < adjacentFaces.size(v0Index); k++) {
+            computeNormalAndArea(adjacentFaces.get(v0Index, k));
+        }
+
+        // v0 的二次方误差矩阵和位置改变了，使用法向量度量时相邻顶点的面也改变了，与它们相连的边的缓存都已过期
+        quadricVersions[v0Index]++;
+        if ((mode & MODE_QEM_N) == MODE_QEM_N) {
+            for (int k = 0; k < adjacentVertices.size(v0Index); k++) {
+                quadricVersions[adjacentVertices.get(v0Index, k)]++;
+            }
+        }
+        return removed;
     }
 
+    /**
+     * 在收缩之前记录将v1 合并到v0 的收缩：v1 的面中同时包含v0 的将被删除，其余的将改为使用v0。
+     * v0 为-1 时表示删除孤立的点v1。未记录简化过程时什么也不做
+     */
+    private void recordCollapse(int v0, int v1) {
+        if (progressive == null) {
+            return;
+        }
+        if (v0 < 0) {
+            progressive.record(v1, -1, null, 0, null, 0);
+            return;
+        }
+        progressive.record(v1, v0, positions, v0 * 3, bestPositions, v0 * 3);
+        for (int k = 0; k < adjacentFaces.size(v1); k++) {
+            int f = adjacentFaces.get(v1, k);
+            progressive.addFace(f, hasVertex(f, v0));
+        }
+    }
 
-    public class Vertex {
+    private boolean isLocked(int v) {
+        return lockedVertices != null && lockedVertices[v];
+    }
 
-        public Vector position;
-//        public Vector normal;
+    /**
+     * 将顶点标记为已删除，并释放它在邻接表中的空间
+     */
+    private void removeVertex(int v) {
+        removedVertices[v] = true;
+        adjacentVertices.clear(v);
+        adjacentFaces.clear(v);
+    }
 
-        public float[] Q;         // error quardic
-        public int candidateIndex;            // 收缩的另一个端点的索引
-        public float[] bestPosition;        // 代价最小的收缩顶点的位置
-        public float cost;              // 最小收缩代价
+    /**
+     * Q(v0) = Q(v0) + Q(v1)
+     */
+    private void addQuadrics(int v0, int v1) {
+        QuadricHelper.add(quadrics, v0 * QuadricHelper.SIZE, quadrics, v0 * QuadricHelper.SIZE,
+                quadrics, v1 * QuadricHelper.SIZE);
+    }
 
-        // 为了减少程序的复杂性，加快简化速度，不允许相邻点和相邻面的列表中出现重复或者无效的元素索引，牺牲空间为代价
-        public Set<Integer> adjacentVerticesIndex = new HashSet<>();         // 相邻顶点的索引
-        public Set<Integer> adjacentFacesIndex = new HashSet<>();            // 相邻面的索引
+    private boolean hasVertex(int f, int vIndex) {
+        return triangles[f * 3] == vIndex || triangles[f * 3 + 1] == vIndex || triangles[f * 3 + 2] == vIndex;
+    }
 
-        public Vertex() {
-            position = new Vector();
+    private boolean replaceVertex(int f, int oldIndex, int newIndex) {
+        for (int k = f * 3; k < f * 3 + 3; k++) {
+            if (triangles[k] == oldIndex) {
+                triangles[k] = newIndex;
+                return true;
+            }
         }
+        return false;
+    }
 
-        public Vertex(float[] a) {
-            position = new Vector(a);
+    /**
+     * 计算面的单位法向量和面积，当面的顶点改变时需调用此方法
+     */
+    private void computeNormalAndArea(int f) {
+        int p1 = triangles[f * 3] * 3;
+        int p2 = triangles[f * 3 + 1] * 3;
+        int p3 = triangles[f * 3 + 2] * 3;
+        // n = (p1 - p2) x (p3 - p2)
+        float ux = positions[p1] - positions[p2];
+        float uy = positions[p1 + 1] - positions[p2 + 1];
+        float uz = positions[p1 + 2] - positions[p2 + 2];
+        float vx = positions[p3] - positions[p2];
+        float vy = positions[p3 + 1] - positions[p2 + 1];
+        float vz = positions[p3 + 2] - positions[p2 + 2];
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float d = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (d != 0) {
+            nx /= d;
+            ny /= d;
+            nz /= d;
         }
+        normals[f * 3] = nx;
+        normals[f * 3 + 1] = ny;
+        normals[f * 3 + 2] = nz;
+        areas[f] = d / 2;
+    }
 
-//        public Vertex(float x, float y, float z) {
-//            position = new Vector();
-//            position.x = x;
-//            position.y = y;
-//            position.z = z;
-//        }
-//
-//        public Vertex(Vector v) {
-//            if (v == null) {
-//                throw new NullPointerException();
-//            }
-//            position = v;
-//        }
-
-        /**
-         * 使用平均向量法计算顶点的法向量
-         */
-//        public void computeNormal() {
-//            float[] sum = new float[]{0, 0, 0};
-//            for (int fIndex : adjacentFacesIndex) {
-//                Face f = faceList.get(fIndex);
-//                sum[0] += f.normal.x;
-//                sum[1] += f.normal.y;
-//                sum[2] += f.normal.z;
-//            }
-//            sum[0] /= adjacentFacesIndex.size();
-//            sum[1] /= adjacentFacesIndex.size();
-//            sum[2] /= adjacentFacesIndex.size();
-//            normal = new Vector(sum);
-//        }
+    /**
+     * 计算每个面的基础二次方误差矩阵
+     */
+    private void computeK(int f) {
+        // suppose the plane(face) is denoted as p = [a, b, c, d]^T
+        int v = triangles[f * 3] * 3;            // 任取面的一个顶点
+        float a = normals[f * 3];
+        float b = normals[f * 3 + 1];
+        float c = normals[f * 3 + 2];
+        float d = - (a * positions[v] + b * positions[v + 1] + c * positions[v + 2]);
+
+        // K = p * p^T
+        QuadricHelper.fromPlane(faceQuadrics, f * QuadricHelper.SIZE, a, b, c, d);
+    }
 
-        /**
-         * 计算每个顶点的二次方误差矩阵，必须先调用Face 的computeK() 方法计算面的基础二次方误差矩阵
-         */
-        public void computeQ() {
-            // Q = sum(K)
-            Q = new float[16];
-            for (int fIndex : adjacentFacesIndex) {
-            	Face f = faceList.get(fIndex);
-                float[] temp = new float[16];
-                if ((mode & MODE_QEM_A) == MODE_QEM_A) {
-                	MatrixHelper.multiplyK(temp, f.K, f.area);
-                } else if ((mode & MODE_QEM_V) == MODE_QEM_V) {
-                	MatrixHelper.multiplyK(temp, f.K, f.area * f.area);
-                } else {
-                	temp = f.K;
-                }
-                
-                MatrixHelper.add(Q, Q, temp);
-            }
-        }
-
-        /**
-         * 计算该点最小的折叠代价以及最佳的折叠位置
-         */
-        public void computeCostAndCandidate() {
-            cost = Float.MAX_VALUE;
-            if (adjacentVerticesIndex.size() == 0) {
-                // 如果该点为孤立的点，则优先收缩
-                cost = 0;
-            }
-            for (int vIndex : adjacentVerticesIndex) {
-                float[] tempPosition = new float[4];
-                float tempCost = computeCostCollapseTo(vIndex, tempPosition);
-                if (tempCost < cost) {
-                    candidateIndex = vIndex;
-                    cost = tempCost;
-                    bestPosition = tempPosition;
-                }
+    /**
+     * 计算每个顶点的二次方误差矩阵，必须先调用computeK() 方法计算面的基础二次方误差矩阵
+     */
+    private void computeQ(int v) {
+        // Q = sum(K)
+        int offset = v * QuadricHelper.SIZE;
+        Arrays.fill(quadrics, offset, offset + QuadricHelper.SIZE, 0);
+        for (int k = 0; k < adjacentFaces.size(v); k++) {
+            int fIndex = adjacentFaces.get(v, k);
+            float weight = 1;
+            if ((mode & MODE_QEM_A) == MODE_QEM_A) {
+                weight = areas[fIndex];
+            } else if ((mode & MODE_QEM_V) == MODE_QEM_V) {
+                weight = areas[fIndex] * areas[fIndex];
             }
+            QuadricHelper.addScaled(quadrics, offset, faceQuadrics, fIndex * QuadricHelper.SIZE, weight);
         }
+    }
 
-        private float computeCostCollapseTo(int vIndex, float[] newPosition) {
-            Vertex v = vertexList.get(vIndex);
-
-            // Qe = Q1 + Q2
-            float[] Qe = new float[16];
-            MatrixHelper.add(Qe, this.Q, v.Q);
-
-            float[] t = Arrays.copyOf(Qe, Qe.length);
-            t[3] = t[7] = t[11] = 0;
-            t[15] = 1;
-            float[] Qe_v = new float[16];
-            float cost = Float.MAX_VALUE;
-            if (MatrixHelper.invertM(Qe_v, t)) {
-                // 计算新顶点的位置
-                MatrixHelper.multiplyMV(newPosition, Qe_v, new float[]{0, 0, 0, 1});
-
-                float[] temp = new float[4];
-                MatrixHelper.multiplyMV(temp, Qe, newPosition);
-                cost = MatrixHelper.dotProduct(newPosition, temp);
-            } else{
-                // 矩阵不可逆，则选择收缩点在两个端点或者中点
-                // 收缩点选在此端点
-                float[] v1 = this.position.toFloatArray();
-                float[] temp = new float[4];
-                MatrixHelper.multiplyMV(temp, Qe, v1);
-                float cost1 = MatrixHelper.dotProduct(v1, temp);
-                if (cost1 < cost) {
-                    cost = cost1;
-                    System.arraycopy(v1, 0, newPosition, 0, 4);
-                }
+    /**
+     * 计算该点最小的折叠代价以及最佳的折叠位置
+     */
+    private void computeCostAndCandidate(int v) {
+        computeCostAndCandidate(v, scratch, edgeCache);
+    }
 
-                // 收缩点为另一端点
-                float[] v2 = v.position.toFloatArray();
-                MatrixHelper.multiplyMV(temp, Qe, v2);
-                float cost2 = MatrixHelper.dotProduct(v2, temp);
-                if (cost2 < cost) {
-                    cost = cost2;
-                    System.arraycopy(v2, 0, newPosition, 0, 4);
-                }
+    /**
+     * 与computeCostAndCandidate(int) 相同，使用调用者提供的临时空间，不使用边的缓存，可以在多个线程中同时调用
+     * @param scratch 长度为SCRATCH_SIZE 的临时数组
+     */
+    private void computeCostAndCandidate(int v, float[] scratch) {
+        computeCostAndCandidate(v, scratch, null);
+    }
 
-                // 收缩点为中点
-                float[] v3 = new float[]{
-                        (this.position.x + v.position.x) / 2,
-                        (this.position.y + v.position.y) / 2,
-                        (this.position.z + v.position.z) / 2,
-                        1};
-                MatrixHelper.multiplyMV(temp, Qe, v3);
-                float cost3 = MatrixHelper.dotProduct(v3, temp);
-                if (cost3 < cost) {
-                    cost = cost3;
-                    System.arraycopy(v3, 0, newPosition, 0, 4);
+    /**
+     * @param cache 边的收缩代价的缓存，为null 时每条边都重新计算
+     */
+    private void computeCostAndCandidate(int v, float[] scratch, EdgeCostCache cache) {
+        float cost = Float.MAX_VALUE;
+        if (adjacentVertices.size(v) == 0 && !isLocked(v)) {
+            // 如果该点为孤立的点，则优先收缩
+            cost = 0;
+        }
+        for (int k = 0; k < adjacentVertices.size(v); k++) {
+            int vIndex = adjacentVertices.get(v, k);
+            float tempCost;
+            if (cache == null) {
+                tempCost = computeCostCollapseTo(v, vIndex, scratch);
+            } else {
+                tempCost = cache.get(v, vIndex, quadricVersions[v], quadricVersions[vIndex], scratch, SCRATCH_POSITION);
+                if (Float.isNaN(tempCost)) {
+                    tempCost = computeCostCollapseTo(v, vIndex, scratch);
+                    cache.put(v, vIndex, quadricVersions[v], quadricVersions[vIndex], tempCost,
+                            scratch, SCRATCH_POSITION);
                 }
             }
+            if (tempCost < cost) {
+                candidates[v] = vIndex;
+                cost = tempCost;
+                System.arraycopy(scratch, SCRATCH_POSITION, bestPositions, v * 3, 3);
+            }
+        }
+        costs[v] = cost;
+        costVersions[v] = versions[v];
+    }
 
-            if ((mode & MODE_QEM_N) == MODE_QEM_N) {
-                List<Integer> sides = new ArrayList<>();
-                for (int fIndex : this.adjacentFacesIndex) {
-                    if (faceList.get(fIndex).hasVertex(vIndex)) {
-                        sides.add(fIndex);
-                    }
-                }
-                if (sides.size() == 0) {
-//                    cost = 0;
-                    return cost;
-                }
+    /**
+     * 计算将边(v0, vIndex) 收缩为一点的代价
+     * @param scratch 长度为SCRATCH_SIZE 的临时数组，收缩点的位置保存在scratch[SCRATCH_POSITION] 开始的3个float 中
+     * @return 收缩代价
+     */
+    float computeCostCollapseTo(int v0, int vIndex, float[] scratch) {
+        if (isLocked(vIndex)) {
+            return Float.MAX_VALUE;
+        }
 
-                // 保存法向量相差最大的两个面的索引
-                int mIndex = -1;
-                int maxIndex = -1;
+        // Qe = Q1 + Q2
+        QuadricHelper.add(scratch, 0, quadrics, v0 * QuadricHelper.SIZE, quadrics, vIndex * QuadricHelper.SIZE);
+
+        // 计算新顶点的位置
+        float cost = Float.MAX_VALUE;
+        if (isLocked(v0)) {
+            // 被锁定的顶点不能移动，收缩点只能在该端点
+            float x = positions[v0 * 3], y = positions[v0 * 3 + 1], z = positions[v0 * 3 + 2];
+            setScratchPosition(scratch, x, y, z);
+            cost = QuadricHelper.evaluate(scratch, 0, x, y, z);
+        } else if (QuadricHelper.optimalPosition(scratch, 0, scratch, SCRATCH_POSITION)) {
+            cost = QuadricHelper.evaluate(scratch, 0, scratch[SCRATCH_POSITION],
+                    scratch[SCRATCH_POSITION + 1], scratch[SCRATCH_POSITION + 2]);
+        } else {
+            // 矩阵不可逆，则选择收缩点在两个端点或者中点
+            float x1 = positions[v0 * 3], y1 = positions[v0 * 3 + 1], z1 = positions[v0 * 3 + 2];
+            float x2 = positions[vIndex * 3], y2 = positions[vIndex * 3 + 1], z2 = positions[vIndex * 3 + 2];
+            // 收缩点选在此端点
+            float cost1 = QuadricHelper.evaluate(scratch, 0, x1, y1, z1);
+            if (cost1 < cost) {
+                cost = cost1;
+                setScratchPosition(scratch, x1, y1, z1);
+            }
 
-                float S = 0;    // 总面积
-                float smax = 0; // 面积最大的一个面的面积
+            // 收缩点为另一端点
+            float cost2 = QuadricHelper.evaluate(scratch, 0, x2, y2, z2);
+            if (cost2 < cost) {
+                cost = cost2;
+                setScratchPosition(scratch, x2, y2, z2);
+            }
 
-                float maxcurv = -1;
-                for (int i : this.adjacentFacesIndex) {
-                    Face f1 = faceList.get(i);
-                    S += f1.area;
-                    if (f1.area > smax) {
-                        smax = f1.area;
-                    }
+            // 收缩点为中点
+            float x3 = (x1 + x2) / 2, y3 = (y1 + y2) / 2, z3 = (z1 + z2) / 2;
+            float cost3 = QuadricHelper.evaluate(scratch, 0, x3, y3, z3);
+            if (cost3 < cost) {
+                cost = cost3;
+                setScratchPosition(scratch, x3, y3, z3);
+            }
+        }
 
-                    float mcurv = 2;
-                    for (int j : sides) {
-                        Face f2 = faceList.get(j);
-                        float dotProduct = f1.normal.dotProduct(f2.normal);
-                        float curv = (1 - dotProduct) / 2;
-                        if (curv < mcurv) {
-                            mcurv = curv;
-                            mIndex = j;
-                        }
-                    }
-                    if (mcurv > maxcurv) {
-                        maxcurv = mcurv;
-                        maxIndex = i;
-                    }
+        if ((mode & MODE_QEM_N) == MODE_QEM_N) {
+            // 同时包含两个端点的面（边两侧的面）
+            int sides = 0;
+            for (int k = 0; k < adjacentFaces.size(v0); k++) {
+                if (hasVertex(adjacentFaces.get(v0, k), vIndex)) {
+                    sides++;
                 }
-                for (int i : v.adjacentFacesIndex) {
-                    Face f1 = faceList.get(i);
-                    S += f1.area;
-                    if (f1.area > smax) {
-                        smax = f1.area;
+            }
+            if (sides == 0) {
+//                cost = 0;
+                return cost;
+            }
+
+            // 保存法向量相差最大的两个面的索引
+            int mIndex = -1;
+            int maxIndex = -1;
+
+            float S = 0;    // 总面积
+            float smax = 0; // 面积最大的一个面的面积
+
+            float maxcurv = -1;
+            for (int k = 0; k < 2; k++) {
+                // 依次遍历v0 和另一端点的相邻面
+                int v = k == 0 ? v0 : vIndex;
+                for (int n = 0; n < adjacentFaces.size(v); n++) {
+                    int i = adjacentFaces.get(v, n);
+                    S += areas[i];
+                    if (areas[i] > smax) {
+                        smax = areas[i];
                     }
 
                     float mcurv = 2;
-                    for (int j : sides) {
-                        Face f2 = faceList.get(j);
-                        float dotProduct = f1.normal.dotProduct(f2.normal);
+                    for (int m = 0; m < adjacentFaces.size(v0); m++) {
+                        int j = adjacentFaces.get(v0, m);
+                        if (!hasVertex(j, vIndex)) continue;
+                        float dotProduct = normals[i * 3] * normals[j * 3]
+                                + normals[i * 3 + 1] * normals[j * 3 + 1]
+                                + normals[i * 3 + 2] * normals[j * 3 + 2];
                         float curv = (1 - dotProduct) / 2;
                         if (curv < mcurv) {
                             mcurv = curv;
@@ -654,120 +1777,34 @@ public class ObjectModel {
                         maxIndex = i;
                     }
                 }
-
-                // 计算影响因子
-                for (int i : sides) {
-                    S -= faceList.get(i).area;
-                }
-
-//                float alpha = (faceList.get(minIndex).area + faceList.get(maxIndex).area) / S;
-                float alpha = 4 * (faceList.get(mIndex).area + faceList.get(maxIndex).area) / S;
-//                float alpha = (faceList.get(minIndex).area + faceList.get(maxIndex).area) / (2 * smax);
-                if (alpha > 1) {
-                    alpha = 1;
-                }
-//                System.out.println("Alpha:" + alpha);
-
-                cost = cost * (1 - alpha + alpha * maxcurv);
             }
 
-            return cost;
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("Position:" + position);
-//            stringBuilder.append("Normal:" + normal + "\n");
-//            stringBuilder.append("Neighbors: ");
-//            for (int vIndex : adjacentVerticesIndex) {
-//                stringBuilder.append(vIndex + " ");
-//            }
-//            stringBuilder.append("\nFaces: ");
-//            for (int fIndex : adjacentFacesIndex) {
-//                stringBuilder.append(fIndex + " ");
-//            }
-            return stringBuilder.toString();
-        }
-    }
-
-    private class Face {
-
-        public final int[] verticesIndex = new int[3];
-        public Vector normal;      // 面的单位法向量
-        public float[] K;          // fundamental error quadric
-
-        private float area;        // 面积，仅在MODE_QEM_A 模式下有效
-
-
-        public Face(int vIndex1, int vIndex2, int vIndex3) {
-            verticesIndex[0] = vIndex1;
-            verticesIndex[1] = vIndex2;
-            verticesIndex[2] = vIndex3;
-
-            computeNormalAndArea();
-        }
-
-        public boolean hasVertex(int vIndex) {
-            for (int i : verticesIndex) {
-                if (i == vIndex) {
-                    return true;
+            // 计算影响因子
+            for (int m = 0; m < adjacentFaces.size(v0); m++) {
+                int i = adjacentFaces.get(v0, m);
+                if (hasVertex(i, vIndex)) {
+                    S -= areas[i];
                 }
             }
-            return false;
-        }
 
-        public boolean replaceVertex(int oldIndex, int newIndex) {
-            for (int i = 0; i < 3; i++) {
-                if (verticesIndex[i] == oldIndex) {
-                    verticesIndex[i] = newIndex;
-                    return true;
-                }
+//            float alpha = (areas[minIndex] + areas[maxIndex]) / S;
+            float alpha = 4 * (areas[mIndex] + areas[maxIndex]) / S;
+//            float alpha = (areas[minIndex] + areas[maxIndex]) / (2 * smax);
+            if (alpha > 1) {
+                alpha = 1;
             }
-            return false;
-        }
+//            System.out.println("Alpha:" + alpha);
 
-        /**
-         * 更新法向量、面积及二次方误差矩阵，当面的顶点改变时需调用此方法
-         */
-        public void update() {
-            computeNormalAndArea();
-//            computeK();
+            cost = cost * (1 - alpha + alpha * maxcurv);
         }
 
-        /**
-         * 计算每个面的基础二次方误差矩阵
-         */
-        public void computeK() {
-            // suppose the plane(face) is denoted as p = [a, b, c, d]^T
-            Vertex oneVertex = vertexList.get(verticesIndex[0]);            // 任取面的一个顶点
-            float d = - normal.dotProduct(oneVertex.position);
-            float[] p = new float[]{normal.x, normal.y, normal.z, d};
-
-            // K = p * p^T
-            K = new float[16];
-            for (int i = 0; i < 4; i++) {
-                for (int j = 0; j < 4; j++) {
-                    // 注意，这里为了与OpenGL 兼容，使用列向量的方式组织矩阵
-                    K[i + j * 4] = p[i] * p[j];
-                }
-            }
-        }
-
-        private void computeNormalAndArea() {
-            Vertex p1 = vertexList.get(verticesIndex[0]);
-            Vertex p2 = vertexList.get(verticesIndex[1]);
-            Vertex p3 = vertexList.get(verticesIndex[2]);
-            Vector n = Vector.minus(p1.position, p2.position).crossProduct(Vector.minus
-                    (p3.position, p2.position));
-            normal = n.normalize();
-            area = n.magnitude() / 2;
-        }
+        return cost;
+    }
 
-        @Override
-        public String toString() {
-            return "(" + verticesIndex[0] + "," + verticesIndex[1] + "," + verticesIndex[2] + ")";
-        }
+    private static void setScratchPosition(float[] scratch, float x, float y, float z) {
+        scratch[SCRATCH_POSITION] = x;
+        scratch[SCRATCH_POSITION + 1] = y;
+        scratch[SCRATCH_POSITION + 2] = z;
     }
 
 //    private class CollapseRecord {
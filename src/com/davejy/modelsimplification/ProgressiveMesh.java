@@ -0,0 +1,197 @@
+package com.davejy.modelsimplification;
+
+import java.util.Arrays;
+
+/**
+ * 渐进网格（progressive mesh）：按顺序记录简化过程中的每一次收缩，之后可以在任意两个细节层次之间
+ * 重做收缩或撤销收缩（顶点分裂），所需时间与两个层次的顶点数之差成正比。
+ * <p>
+ * 每一条记录包括被删除的顶点、保留的顶点（孤立的点被删除时为-1）、保留的顶点收缩前后的位置，
+ * 以及被删除的面（以~f 保存）和顶点由被删除的顶点改为保留的顶点的面
+ */
+class ProgressiveMesh {
+
+    private final int originalVertexCount;   // 开始记录时的顶点数目
+    private int size;                        // 记录的数目
+    private int[] removedVertex = new int[64];
+    private int[] keptVertex = new int[64];
+    private float[] oldPositions = new float[64 * 3];
+    private float[] newPositions = new float[64 * 3];
+    private int[] faceStart = new int[65];   // 第i条记录的面为faces[faceStart[i]] 至faces[faceStart[i + 1]]
+    private int[] faces = new int[64 * 8];
+
+    // 当前细节层次的模型数据，所有记录都已重做时与简化后的模型相同
+    private float[] positions;
+    private int[] triangles;
+    private boolean[] removedVertices;
+    private boolean[] removedFaces;
+    private int vertexSlots;
+    private int faceSlots;
+    private int vN;
+    private int fN;
+    private int cursor;                      // 已重做的记录的数目，为-1 时当前数据无效
+
+    /**
+     * @param originalVertexCount 开始记录时的顶点数目
+     */
+    ProgressiveMesh(int originalVertexCount) {
+        this.originalVertexCount = originalVertexCount;
+        this.cursor = -1;
+    }
+
+    int getOriginalVertexCount() {
+        return originalVertexCount;
+    }
+
+    /**
+     * 全部收缩之后（最粗糙的层次）的顶点数目
+     */
+    int getBaseVertexCount() {
+        return originalVertexCount - size;
+    }
+
+    /**
+     * 开始一条新的记录，之后用addFace 加入这次收缩涉及的面
+     * @param removed 被删除的顶点
+     * @param kept 保留的顶点，孤立的点被删除时为-1
+     * @param oldPosition 保留的顶点收缩前的位置，kept 为-1 时不使用
+     * @param oldOffset 位置在oldPosition 中的偏移量
+     * @param newPosition 保留的顶点收缩后的位置，kept 为-1 时不使用
+     * @param newOffset 位置在newPosition 中的偏移量
+     */
+    void record(int removed, int kept, float[] oldPosition, int oldOffset, float[] newPosition, int newOffset) {
+        if (size == removedVertex.length) {
+            int capacity = size * 2;
+            removedVertex = Arrays.copyOf(removedVertex, capacity);
+            keptVertex = Arrays.copyOf(keptVertex, capacity);
+            oldPositions = Arrays.copyOf(oldPositions, capacity * 3);
+            newPositions = Arrays.copyOf(newPositions, capacity * 3);
+            faceStart = Arrays.copyOf(faceStart, capacity + 1);
+        }
+        removedVertex[size] = removed;
+        keptVertex[size] = kept;
+        if (kept >= 0) {
+            System.arraycopy(oldPosition, oldOffset, oldPositions, size * 3, 3);
+            System.arraycopy(newPosition, newOffset, newPositions, size * 3, 3);
+        }
+        faceStart[size + 1] = faceStart[size];
+        size++;
+        // 模型已经改变，当前层次的数据需要重新复制
+        cursor = -1;
+        positions = null;
+        triangles = null;
+        removedVertices = null;
+        removedFaces = null;
+    }
+
+    /**
+     * 向最后一条记录加入一个面
+     * @param f 面的索引
+     * @param removed 该面是否在这次收缩中被删除，否则该面的顶点由被删除的顶点改为保留的顶点
+     */
+    void addFace(int f, boolean removed) {
+        int end = faceStart[size];
+        if (end == faces.length) {
+            faces = Arrays.copyOf(faces, end * 2);
+        }
+        faces[end] = removed ? ~f : f;
+        faceStart[size] = end + 1;
+    }
+
+    boolean hasState() {
+        return cursor >= 0;
+    }
+
+    /**
+     * 复制全部收缩之后的模型数据作为当前层次
+     */
+    void reset(float[] positions, int vertexSlots, int[] triangles, int faceSlots,
+               boolean[] removedVertices, boolean[] removedFaces, int vN, int fN) {
+        this.positions = Arrays.copyOf(positions, vertexSlots * 3);
+        this.triangles = Arrays.copyOf(triangles, faceSlots * 3);
+        this.removedVertices = Arrays.copyOf(removedVertices, vertexSlots);
+        this.removedFaces = Arrays.copyOf(removedFaces, faceSlots);
+        this.vertexSlots = vertexSlots;
+        this.faceSlots = faceSlots;
+        this.vN = vN;
+        this.fN = fN;
+        this.cursor = size;
+    }
+
+    /**
+     * 移动到顶点数目为vertexCount 的层次，并返回该层次的紧凑模型数据（不含法向量）
+     * @param vertexCount 顶点数目，必须在getBaseVertexCount() 与getOriginalVertexCount() 之间
+     * @return 紧凑的模型数据
+     * @throws IllegalArgumentException 顶点数目超出记录的范围
+     */
+    MeshSnapshot extract(int vertexCount) {
+        if (vertexCount < getBaseVertexCount() || vertexCount > originalVertexCount) {
+            throw new IllegalArgumentException("Vertex count " + vertexCount + " out of recorded range ["
+                    + getBaseVertexCount() + ", " + originalVertexCount + "]");
+        }
+        int target = originalVertexCount - vertexCount;
+        while (cursor > target) {
+            undo(--cursor);
+        }
+        while (cursor < target) {
+            redo(cursor++);
+        }
+        return MeshSnapshot.compact(positions, removedVertices, vertexSlots, vN, triangles, removedFaces,
+                faceSlots, fN, null, null);
+    }
+
+    /**
+     * 撤销第i条记录（顶点分裂）
+     */
+    private void undo(int i) {
+        int removed = removedVertex[i];
+        int kept = keptVertex[i];
+        removedVertices[removed] = false;
+        vN++;
+        if (kept < 0) {
+            return;
+        }
+        System.arraycopy(oldPositions, i * 3, positions, kept * 3, 3);
+        for (int k = faceStart[i]; k < faceStart[i + 1]; k++) {
+            int f = faces[k];
+            if (f < 0) {
+                removedFaces[~f] = false;
+                fN++;
+            } else {
+                replaceVertex(f, kept, removed);
+            }
+        }
+    }
+
+    /**
+     * 重做第i条记录（边收缩）
+     */
+    private void redo(int i) {
+        int removed = removedVertex[i];
+        int kept = keptVertex[i];
+        removedVertices[removed] = true;
+        vN--;
+        if (kept < 0) {
+            return;
+        }
+        System.arraycopy(newPositions, i * 3, positions, kept * 3, 3);
+        for (int k = faceStart[i]; k < faceStart[i + 1]; k++) {
+            int f = faces[k];
+            if (f < 0) {
+                removedFaces[~f] = true;
+                fN--;
+            } else {
+                replaceVertex(f, removed, kept);
+            }
+        }
+    }
+
+    private void replaceVertex(int f, int oldIndex, int newIndex) {
+        for (int k = f * 3; k < f * 3 + 3; k++) {
+            if (triangles[k] == oldIndex) {
+                triangles[k] = newIndex;
+                return;
+            }
+        }
+    }
+}
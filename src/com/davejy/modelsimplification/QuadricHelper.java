@@ -0,0 +1,101 @@
+package com.davejy.modelsimplification;
+
+/**
+ * 对称的二次方误差矩阵（error quadric）的运算。矩阵
+ * <pre>
+ * | aa ab ac ad |
+ * | ab bb bc bd |
+ * | ac bc cc cd |
+ * | ad bd cd dd |
+ * </pre>
+ * 只保存上三角的10个系数，顺序为aa, ab, ac, ad, bb, bc, bd, cc, cd, dd。
+ * 所有方法都直接读写调用者提供的数组和偏移量，不分配任何对象
+ */
+class QuadricHelper {
+
+    /**
+     * 每个二次方误差矩阵占用的float 数目
+     */
+    public static final int SIZE = 10;
+
+    /**
+     * 由平面ax + by + cz + d = 0 计算基础二次方误差矩阵K = p * p^T
+     * @param q 结果数组
+     * @param o 结果在q 中的偏移量
+     */
+    public static void fromPlane(float[] q, int o, float a, float b, float c, float d) {
+        q[o] = a * a;
+        q[o + 1] = a * b;
+        q[o + 2] = a * c;
+        q[o + 3] = a * d;
+        q[o + 4] = b * b;
+        q[o + 5] = b * c;
+        q[o + 6] = b * d;
+        q[o + 7] = c * c;
+        q[o + 8] = c * d;
+        q[o + 9] = d * d;
+    }
+
+    /**
+     * 将两个矩阵相加，res 可以与q1 或q2 为同一位置
+     */
+    public static void add(float[] res, int ro, float[] q1, int o1, float[] q2, int o2) {
+        for (int i = 0; i < SIZE; i++) {
+            res[ro + i] = q1[o1 + i] + q2[o2 + i];
+        }
+    }
+
+    /**
+     * res = res + q * w
+     */
+    public static void addScaled(float[] res, int ro, float[] q, int o, float w) {
+        for (int i = 0; i < SIZE; i++) {
+            res[ro + i] += q[o + i] * w;
+        }
+    }
+
+    /**
+     * 计算v^T * Q * v，其中v = (x, y, z, 1)
+     * @return 点到矩阵所表示的平面集合的二次误差
+     */
+    public static float evaluate(float[] q, int o, float x, float y, float z) {
+        return q[o] * x * x + 2 * q[o + 1] * x * y + 2 * q[o + 2] * x * z + 2 * q[o + 3] * x
+                + q[o + 4] * y * y + 2 * q[o + 5] * y * z + 2 * q[o + 6] * y
+                + q[o + 7] * z * z + 2 * q[o + 8] * z
+                + q[o + 9];
+    }
+
+    /**
+     * 求使误差最小的位置，即解3X3的线性方程组A * v = -b，
+     * 其中A 为矩阵左上角的3X3部分，b = (ad, bd, cd)
+     * @param q 二次方误差矩阵
+     * @param o 矩阵在q 中的偏移量
+     * @param res 保存结果位置的数组
+     * @param ro 结果在res 中的偏移量
+     * @return 方程组是否有唯一解，无解时res 不被修改
+     */
+    public static boolean optimalPosition(float[] q, int o, float[] res, int ro) {
+        double a00 = q[o], a01 = q[o + 1], a02 = q[o + 2];
+        double a11 = q[o + 4], a12 = q[o + 5];
+        double a22 = q[o + 7];
+        double b0 = -q[o + 3], b1 = -q[o + 6], b2 = -q[o + 8];
+
+        // 余子式，矩阵对称因此只需计算6个
+        double c00 = a11 * a22 - a12 * a12;
+        double c01 = a02 * a12 - a01 * a22;
+        double c02 = a01 * a12 - a02 * a11;
+        double c11 = a00 * a22 - a02 * a02;
+        double c12 = a01 * a02 - a00 * a12;
+        double c22 = a00 * a11 - a01 * a01;
+
+        double det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (det == 0) {
+            return false;
+        }
+        double invdet = 1 / det;
+        res[ro] = (float) ((c00 * b0 + c01 * b1 + c02 * b2) * invdet);
+        res[ro + 1] = (float) ((c01 * b0 + c11 * b1 + c12 * b2) * invdet);
+        res[ro + 2] = (float) ((c02 * b0 + c12 * b1 + c22 * b2) * invdet);
+        return true;
+    }
+}
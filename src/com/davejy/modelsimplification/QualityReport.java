@@ -0,0 +1,157 @@
+package com.davejy.modelsimplification;
+
+import java.util.Arrays;
+
+/**
+ * 模型中三角面质量的统计结果，由ObjectModel.evaluateQuality() 一次遍历得到。
+ * <p>
+ * 面的质量为4√3·面积 / 三边的平方和，等边三角形为1，退化的三角形为0；
+ * 纵横比（aspect ratio）为最长边 / 最短的高，再乘以√3/2 使等边三角形为1，越大越狭长。
+ * 各部分分别统计后再合并（Welford 方法的并行形式），因此可以在多个线程中计算
+ */
+public class QualityReport {
+
+    // 纵横比直方图各个区间的分界
+    private static final float[] ASPECT_RATIO_BINS = {1.5f, 2, 3, 5, 10, 100};
+    /**
+     * 面积不超过最长边的平方乘以该值的面视为退化的面
+     */
+    public static final float DEGENERATE_EPSILON = 1e-6f;
+
+    private long faceCount;
+    private double mean;
+    private double m2;                  // 与均值之差的平方和
+    private float minQuality = Float.POSITIVE_INFINITY;
+    private float maxQuality = Float.NEGATIVE_INFINITY;
+    private float minEdgeLength = Float.POSITIVE_INFINITY;
+    private float maxEdgeLength = Float.NEGATIVE_INFINITY;
+    private final long[] histogram = new long[ASPECT_RATIO_BINS.length + 1];
+    private long degenerateFaces;
+
+    QualityReport() {
+    }
+
+    /**
+     * 加入一个面
+     * @param l1 三条边的长度
+     * @param area 面积
+     */
+    void add(float l1, float l2, float l3, float area) {
+        float sum = l1 * l1 + l2 * l2 + l3 * l3;
+        float quality = sum > 0 ? (float) (4 * Math.sqrt(3.0) * area / sum) : 0;
+        if (quality > 1) quality = 1;
+        if (quality < 0) quality = 0;
+
+        faceCount++;
+        double delta = quality - mean;
+        mean += delta / faceCount;
+        m2 += delta * (quality - mean);
+        minQuality = Math.min(minQuality, quality);
+        maxQuality = Math.max(maxQuality, quality);
+
+        float shortest = Math.min(l1, Math.min(l2, l3));
+        float longest = Math.max(l1, Math.max(l2, l3));
+        minEdgeLength = Math.min(minEdgeLength, shortest);
+        maxEdgeLength = Math.max(maxEdgeLength, longest);
+
+        // 最短的高为2 * 面积 / 最长边
+        if (area <= DEGENERATE_EPSILON * longest * longest) {
+            degenerateFaces++;
+            histogram[histogram.length - 1]++;
+        } else {
+            float aspect = (float) (longest * longest * Math.sqrt(3.0) / (4 * area));
+            int bin = 0;
+            while (bin < ASPECT_RATIO_BINS.length && aspect >= ASPECT_RATIO_BINS[bin]) {
+                bin++;
+            }
+            histogram[bin]++;
+        }
+    }
+
+    /**
+     * 将另一部分的统计结果合并到这里
+     */
+    void merge(QualityReport other) {
+        if (other.faceCount == 0) {
+            return;
+        }
+        long n = faceCount + other.faceCount;
+        double delta = other.mean - mean;
+        mean += delta * other.faceCount / n;
+        m2 += other.m2 + delta * delta * faceCount / n * other.faceCount;
+        faceCount = n;
+        minQuality = Math.min(minQuality, other.minQuality);
+        maxQuality = Math.max(maxQuality, other.maxQuality);
+        minEdgeLength = Math.min(minEdgeLength, other.minEdgeLength);
+        maxEdgeLength = Math.max(maxEdgeLength, other.maxEdgeLength);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+        degenerateFaces += other.degenerateFaces;
+    }
+
+    public long getFaceCount() {
+        return faceCount;
+    }
+
+    /**
+     * @return 质量的平均值，与calQAve() 相同
+     */
+    public float getMeanQuality() {
+        return (float) mean;
+    }
+
+    /**
+     * @return 质量的方差（总体方差），与calQMSE(calQAve()) 相同
+     */
+    public float getQualityVariance() {
+        return faceCount > 0 ? (float) (m2 / faceCount) : 0;
+    }
+
+    /**
+     * @return 最低的质量，没有面时为正无穷大
+     */
+    public float getMinQuality() {
+        return minQuality;
+    }
+
+    public float getMaxQuality() {
+        return maxQuality;
+    }
+
+    /**
+     * @return 最短的边长，没有面时为正无穷大
+     */
+    public float getMinEdgeLength() {
+        return minEdgeLength;
+    }
+
+    public float getMaxEdgeLength() {
+        return maxEdgeLength;
+    }
+
+    /**
+     * @return 纵横比直方图，长度为getAspectRatioBins().length + 1，退化的面计入最后一个区间
+     */
+    public long[] getAspectRatioHistogram() {
+        return Arrays.copyOf(histogram, histogram.length);
+    }
+
+    /**
+     * @return 纵横比直方图各个区间的分界，第i 个区间为[bins[i - 1], bins[i])，第一个区间从1开始，最后一个区间没有上界
+     */
+    public static float[] getAspectRatioBins() {
+        return Arrays.copyOf(ASPECT_RATIO_BINS, ASPECT_RATIO_BINS.length);
+    }
+
+    public long getDegenerateFaceCount() {
+        return degenerateFaces;
+    }
+
+    @Override
+    public String toString() {
+        return "faces=" + faceCount + " quality=" + getMeanQuality() + " sd=" + (float) Math.sqrt(getQualityVariance())
+                + " [" + minQuality + ", " + maxQuality + "] edge=[" + minEdgeLength + ", " + maxEdgeLength
+                + "] aspect=" + Arrays.toString(histogram) + " degenerate=" + degenerateFaces;
+    }
+}
@@ -0,0 +1,341 @@
+package com.davejy.modelsimplification;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型简化服务器。每个连接发送一行请求：
+ * <pre>
+ * &lt;model&gt; &lt;ratio&gt; &lt;mode&gt; [text|flat|indexed]
+ * </pre>
+ * model 为模型目录下的.obj 文件或saveSnapshot 生成的快照文件名，mode 为QEM、QEM_A、QEM_V、QEM_N、LAZY、PARALLEL、RANDOM、EDGE_CACHE
+ * （可以用'+'组合）或者对应的整数。服务器在有界的工作线程池上进行简化，队列已满时立即回复
+ * "ERR busy"，否则以writeTo（text，默认）或writeBinaryTo（flat、indexed）的格式返回结果后关闭连接。
+ * 出错时回复以"ERR "开头的一行。请求超过MAX_REQUEST_LENGTH 字节时回复"ERR request too long"，
+ * READ_TIMEOUT_MILLIS 内没有读完请求的连接被关闭
+ */
+public class SimplificationServer implements Closeable {
+
+    private static final int MAX_REQUEST_LENGTH = 1024;          // 请求的最大字节数，不包括换行符
+    private static final int READ_TIMEOUT_MILLIS = 10000;       // 读取请求的超时时间
+    // 客户端可以使用的模式，不包括MODE_PROGRESSIVE 等只供本地使用的模式
+    private static final int REQUEST_MODES = ObjectModel.MODE_QEM_A | ObjectModel.MODE_QEM_V | ObjectModel.MODE_QEM_N
+            | ObjectModel.MODE_LAZY | ObjectModel.MODE_PARALLEL | ObjectModel.MODE_RANDOM | ObjectModel.MODE_EDGE_CACHE;
+
+    private final ServerSocket serverSocket;
+    private final File modelDir;
+    private final ExecutorService connectionPool;      // 处理连接的I/O
+    private final ThreadPoolExecutor workerPool;       // 进行简化计算
+    private final ConcurrentHashMap<String, MeshSnapshot> models = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+    private volatile long timeLimitMillis;              // 每次简化的最长时间，不大于0 时不限制
+
+    /**
+     * @param port 监听的端口
+     * @param modelDir 模型目录
+     * @param workers 简化线程的数目
+     * @param queueCapacity 等待简化的请求的最大数目，超过时拒绝请求
+     * @param maxConnections 同时处理的最大连接数，超过时直接关闭新的连接
+     * @throws IOException
+     */
+    public SimplificationServer(int port, String modelDir, int workers, int queueCapacity, int maxConnections)
+            throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.modelDir = new File(modelDir);
+        this.connectionPool = new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>());
+        this.workerPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 设置每次简化的最长时间。超时的简化提前结束，返回当时已简化的模型（顶点数多于请求的比例）
+     * @param timeLimitMillis 毫秒数，不大于0 时不限制（默认）
+     */
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * 接受连接直到close() 被调用，阻塞当前线程
+     */
+    public void serve() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            try {
+                connectionPool.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        connectionPool.shutdown();
+        workerPool.shutdown();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            // 客户端不发送请求或者不发送换行符时不能一直占用连接线程
+            s.setSoTimeout(READ_TIMEOUT_MILLIS);
+            OutputStream os = s.getOutputStream();
+            String line = readRequestLine(new BufferedInputStream(s.getInputStream(), MAX_REQUEST_LENGTH));
+            if (line == null) {
+                return;
+            }
+            if (line.length() > MAX_REQUEST_LENGTH) {
+                reply(os, "ERR request too long");
+                return;
+            }
+
+            final Request request;
+            try {
+                request = Request.parse(line);
+            } catch (IllegalArgumentException e) {
+                reply(os, "ERR " + e.getMessage());
+                return;
+            }
+
+            Future<ObjectModel> result;
+            try {
+                result = workerPool.submit(() -> simplify(request));
+            } catch (RejectedExecutionException e) {
+                reply(os, "ERR busy");
+                return;
+            }
+
+            ObjectModel model;
+            try {
+                model = result.get();
+            } catch (ExecutionException e) {
+                reply(os, "ERR " + e.getCause());
+                return;
+            }
+
+            if (request.format == Request.FORMAT_TEXT) {
+                model.writeTo(os);
+            } else {
+                model.writeBinaryTo(os, request.format == Request.FORMAT_INDEXED);
+            }
+        } catch (IOException e) {
+            // 客户端断开连接
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ObjectModel simplify(Request request) throws IOException {
+        ObjectModel model = ObjectModel.fromSnapshot(getModel(request.model));
+        model.setMode(request.mode);
+        if (request.ratio < 1) {
+            model.simplifiedTo((int) (model.getVertexCount() * request.ratio), Float.MAX_VALUE, timeLimitMillis, null);
+        }
+        return model;
+    }
+
+    /**
+     * 获取模型数据，每个模型只加载一次，之后的请求共享同一份只读的数组
+     */
+    private MeshSnapshot getModel(String name) throws IOException {
+        MeshSnapshot mesh = models.get(name);
+        if (mesh == null) {
+            Path path = new File(modelDir, name).toPath();
+            if (name.endsWith(".obj")) {
+                MappedObjectFileParser parser = new MappedObjectFileParser(path);
+                parser.parse(true);
+                mesh = new MeshSnapshot();
+                mesh.positions = parser.positions;
+                mesh.vertexCount = parser.vertexCount;
+                mesh.triangles = parser.triangles;
+                mesh.faceCount = parser.faceCount;
+            } else {
+                mesh = MeshSnapshot.read(path);
+            }
+            MeshSnapshot previous = models.putIfAbsent(name, mesh);
+            if (previous != null) {
+                mesh = previous;
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * 读取一行请求，最多读取MAX_REQUEST_LENGTH + 1 个字节，因此返回的字符串比MAX_REQUEST_LENGTH 长时表示请求过长
+     * @return 不包括换行符的请求，没有读到任何字节时返回null
+     * @throws IOException 读取出错或超时
+     */
+    private static String readRequestLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            sb.append((char) c);
+            if (sb.length() > MAX_REQUEST_LENGTH) {
+                return sb.toString();
+            }
+        }
+        if (c == -1 && sb.length() == 0) {
+            return null;
+        }
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '\r') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private static void reply(OutputStream os, String message) throws IOException {
+        os.write((message + "\n").getBytes(StandardCharsets.US_ASCII));
+        os.flush();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 一次简化请求
+     */
+    static class Request {
+        static final int FORMAT_TEXT = 0;
+        static final int FORMAT_FLAT = 1;
+        static final int FORMAT_INDEXED = 2;
+
+        String model;
+        float ratio;
+        int mode;
+        int format;
+
+        static Request parse(String line) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 3 || parts.length > 4) {
+                throw new IllegalArgumentException("usage: <model> <ratio> <mode> [text|flat|indexed]");
+            }
+            Request request = new Request();
+            request.model = parts[0];
+            if (request.model.contains("/") || request.model.contains("\\")
+                    || request.model.contains("..")) {
+                throw new IllegalArgumentException("invalid model name " + request.model);
+            }
+            try {
+                request.ratio = Float.parseFloat(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid ratio " + parts[1]);
+            }
+            if (!(request.ratio > 0 && request.ratio <= 1)) {
+                throw new IllegalArgumentException("ratio must be in (0, 1]");
+            }
+            request.mode = parseMode(parts[2]);
+            request.format = parts.length == 4 ? parseFormat(parts[3]) : FORMAT_TEXT;
+            return request;
+        }
+
+        static int parseMode(String s) {
+            int mode = ObjectModel.MODE_QEM;
+            for (String name : s.toUpperCase().split("\\+")) {
+                switch (name) {
+                case "QEM":
+                    break;
+                case "QEM_A":
+                    mode |= ObjectModel.MODE_QEM_A;
+                    break;
+                case "QEM_V":
+                    mode |= ObjectModel.MODE_QEM_V;
+                    break;
+                case "QEM_N":
+                    mode |= ObjectModel.MODE_QEM_N;
+                    break;
+                case "LAZY":
+                    mode |= ObjectModel.MODE_LAZY;
+                    break;
+                case "PARALLEL":
+                    mode |= ObjectModel.MODE_PARALLEL;
+                    break;
+                case "RANDOM":
+                    mode |= ObjectModel.MODE_RANDOM;
+                    break;
+                case "EDGE_CACHE":
+                    mode |= ObjectModel.MODE_EDGE_CACHE;
+                    break;
+                default:
+                    int bits;
+                    try {
+                        bits = Integer.parseInt(name);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid mode " + s);
+                    }
+                    if ((bits & ~REQUEST_MODES) != 0) {
+                        throw new IllegalArgumentException("unsupported mode " + s);
+                    }
+                    mode |= bits;
+                }
+            }
+            return mode;
+        }
+
+        static int parseFormat(String s) {
+            switch (s.toLowerCase()) {
+            case "text":
+                return FORMAT_TEXT;
+            case "flat":
+                return FORMAT_FLAT;
+            case "indexed":
+                return FORMAT_INDEXED;
+            default:
+                throw new IllegalArgumentException("invalid format " + s);
+            }
+        }
+    }
+
+    /**
+     * 启动服务器：SimplificationServer [port] [modelDir] [workers] [queueCapacity]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        String dir = args.length > 1 ? args[1] : ".";
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int queue = args.length > 3 ? Integer.parseInt(args[3]) : workers * 4;
+        try (SimplificationServer server = new SimplificationServer(port, dir, workers, queue, 1024)) {
+            System.out.println("开始监听端口" + server.getPort() + "...");
+            server.serve();
+        }
+    }
+}
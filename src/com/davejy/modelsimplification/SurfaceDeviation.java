@@ -0,0 +1,165 @@
+package com.davejy.modelsimplification;
+
+import java.util.stream.IntStream;
+
+/**
+ * 两个模型表面之间的偏差，由ObjectModel.measureDeviation 计算。
+ * <p>
+ * 在一个模型的每个顶点以及每个面上均匀分布的采样点处，用另一个模型的均匀网格索引（TriangleGrid）
+ * 求到其表面的最近距离。单向的Hausdorff 距离为所有采样点距离的最大值，
+ * 单向的均方根误差按面积加权（顶点只计入最大值）。双向的值取两个方向中较大的一个。
+ * 采样点按面分块在所有核上同时计算，采样点不保存，内存只用于两个模型的网格索引
+ */
+public class SurfaceDeviation {
+
+    private static final int CHUNK = 1024;            // 并行计算时每一块的面数或顶点数
+
+    private final float forwardHausdorff;
+    private final float backwardHausdorff;
+    private final float forwardRms;
+    private final float backwardRms;
+    private final long samples;
+
+    private SurfaceDeviation(Accumulator forward, Accumulator backward) {
+        forwardHausdorff = (float) Math.sqrt(forward.max);
+        backwardHausdorff = (float) Math.sqrt(backward.max);
+        forwardRms = (float) Math.sqrt(forward.weight > 0 ? forward.sum / forward.weight : 0);
+        backwardRms = (float) Math.sqrt(backward.weight > 0 ? backward.sum / backward.weight : 0);
+        samples = forward.samples + backward.samples;
+    }
+
+    /**
+     * 计算两个模型之间的偏差
+     * @param a 第一个模型（通常为原模型）
+     * @param b 第二个模型（通常为简化后的模型）
+     * @param samplesPerEdge 每个面的每条边分为几段，每个面上取它的平方个采样点，不小于1
+     * @return 偏差
+     * @throws IllegalArgumentException 某个模型没有面
+     */
+    static SurfaceDeviation measure(MeshSnapshot a, MeshSnapshot b, int samplesPerEdge) {
+        if (samplesPerEdge < 1) {
+            throw new IllegalArgumentException("Samples per edge must be positive: " + samplesPerEdge);
+        }
+        TriangleGrid gridA = new TriangleGrid(a.positions, a.triangles, a.faceCount);
+        TriangleGrid gridB = new TriangleGrid(b.positions, b.triangles, b.faceCount);
+        return new SurfaceDeviation(sample(a, gridB, samplesPerEdge), sample(b, gridA, samplesPerEdge));
+    }
+
+    /**
+     * @return 双向的Hausdorff 距离
+     */
+    public float getHausdorffDistance() {
+        return Math.max(forwardHausdorff, backwardHausdorff);
+    }
+
+    /**
+     * @return 第一个模型上的点到第二个模型的最大距离
+     */
+    public float getForwardHausdorffDistance() {
+        return forwardHausdorff;
+    }
+
+    /**
+     * @return 第二个模型上的点到第一个模型的最大距离
+     */
+    public float getBackwardHausdorffDistance() {
+        return backwardHausdorff;
+    }
+
+    /**
+     * @return 两个方向的均方根误差中较大的一个
+     */
+    public float getRmsDistance() {
+        return Math.max(forwardRms, backwardRms);
+    }
+
+    public float getForwardRmsDistance() {
+        return forwardRms;
+    }
+
+    public float getBackwardRmsDistance() {
+        return backwardRms;
+    }
+
+    /**
+     * @return 两个方向的采样点总数
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "hausdorff=" + getHausdorffDistance() + " (" + forwardHausdorff + " / " + backwardHausdorff
+                + ") rms=" + getRmsDistance() + " (" + forwardRms + " / " + backwardRms + ") samples=" + samples;
+    }
+
+    /**
+     * 在mesh 的顶点和面上采样，求到grid 所表示的表面的距离
+     */
+    private static Accumulator sample(MeshSnapshot mesh, TriangleGrid grid, int k) {
+        float[] p = mesh.positions;
+        int[] t = mesh.triangles;
+        int faceChunks = (mesh.faceCount + CHUNK - 1) / CHUNK;
+        int vertexChunks = (mesh.vertexCount + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, faceChunks + vertexChunks).parallel().collect(Accumulator::new, (acc, chunk) -> {
+            if (chunk >= faceChunks) {
+                int end = Math.min(mesh.vertexCount, (chunk - faceChunks + 1) * CHUNK);
+                for (int v = (chunk - faceChunks) * CHUNK; v < end; v++) {
+                    acc.add(grid.nearestDistanceSquared(p[v * 3], p[v * 3 + 1], p[v * 3 + 2]), 0);
+                }
+                return;
+            }
+            int end = Math.min(mesh.faceCount, (chunk + 1) * CHUNK);
+            for (int f = chunk * CHUNK; f < end; f++) {
+                int a = t[f * 3] * 3, b = t[f * 3 + 1] * 3, c = t[f * 3 + 2] * 3;
+                double weight = TriangleGrid.faceArea(p, t, f) / (k * k);
+                // 把面分为k * k 个全等的小三角形，在每个小三角形的重心采样
+                for (int i = 0; i < k; i++) {
+                    for (int j = 0; i + j < k; j++) {
+                        sampleAt(acc, grid, p, a, b, c, (i + 1 / 3f) / k, (j + 1 / 3f) / k, weight);
+                        if (i + j < k - 1) {
+                            sampleAt(acc, grid, p, a, b, c, (i + 2 / 3f) / k, (j + 2 / 3f) / k, weight);
+                        }
+                    }
+                }
+            }
+        }, Accumulator::merge);
+    }
+
+    /**
+     * 在重心坐标为(1 - u - v, u, v) 的点采样
+     */
+    private static void sampleAt(Accumulator acc, TriangleGrid grid, float[] p, int a, int b, int c,
+                                 float u, float v, double weight) {
+        float w = 1 - u - v;
+        float x = w * p[a] + u * p[b] + v * p[c];
+        float y = w * p[a + 1] + u * p[b + 1] + v * p[c + 1];
+        float z = w * p[a + 2] + u * p[b + 2] + v * p[c + 2];
+        acc.add(grid.nearestDistanceSquared(x, y, z), weight);
+    }
+
+    /**
+     * 一部分采样点的统计
+     */
+    private static class Accumulator {
+        double max;           // 距离平方的最大值
+        double sum;           // 距离平方的加权和
+        double weight;        // 权值之和
+        long samples;
+
+        void add(float distanceSquared, double w) {
+            if (distanceSquared > max) max = distanceSquared;
+            sum += distanceSquared * w;
+            weight += w;
+            samples++;
+        }
+
+        void merge(Accumulator other) {
+            max = Math.max(max, other.max);
+            sum += other.sum;
+            weight += other.weight;
+            samples += other.samples;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.davejy.modelsimplification;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 分块（out-of-core）简化放不进内存的.obj 模型。
+ * <p>
+ * 第一遍顺序扫描文件，顶点坐标写入磁盘上的映射文件，同时求出包围盒；第二遍按重心把每个面分到均匀网格的一块中，
+ * 各块的面写入各自的临时文件，并记录每个顶点被哪一块使用，被多块共用的顶点就是块之间的边界。
+ * 之后各块在线程池中独立简化，边界上的顶点锁定不动，因此简化后的块仍然可以按原来的顶点索引拼接起来；
+ * 最后对拼接后的模型再简化一次，去掉边界附近多余的顶点。
+ * <p>
+ * 同一时刻内存中只有parallelism 个块的模型以及各块简化后的结果，峰值内存由块的大小而不是模型的大小决定，
+ * 但简化后的模型仍需放得进内存
+ */
+public class TiledSimplifier {
+
+    private static final int MAX_TILES_PER_AXIS = 8;           // 块的临时文件同时打开，限制其数目
+    private static final int TILE_BUFFER_SIZE = 1 << 16;
+    // 顶点的使用者：0表示未被使用，t + 1 表示只被第t 块使用
+    private static final int UNUSED = 0;
+    private static final int SHARED = -1;                      // 被多块共用，即边界上的顶点
+    // 块内的简化必须逐个收缩才能保证边界顶点不动，块之间已经是并行的
+    private static final int TILE_MODES = ObjectModel.MODE_QEM_A | ObjectModel.MODE_QEM_V | ObjectModel.MODE_QEM_N
+            | ObjectModel.MODE_LAZY | ObjectModel.MODE_EDGE_CACHE;
+
+    private final Path input;
+    private final Path workDir;
+    private int tilesPerAxis = 4;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int mode = ObjectModel.MODE_QEM;
+
+    /**
+     * @param input .obj 文件
+     * @param workDir 存放临时文件的目录，简化结束后临时文件被删除
+     */
+    public TiledSimplifier(Path input, Path workDir) {
+        this.input = input;
+        this.workDir = workDir;
+    }
+
+    /**
+     * 设置包围盒最长边上的块数，默认为4。块越多，每块越小，峰值内存越低，但边界上锁定的顶点越多
+     * @param tilesPerAxis 1到8之间
+     */
+    public void setTilesPerAxis(int tilesPerAxis) {
+        if (tilesPerAxis < 1 || tilesPerAxis > MAX_TILES_PER_AXIS) {
+            throw new IllegalArgumentException("Tiles per axis " + tilesPerAxis + " out of range [1, "
+                    + MAX_TILES_PER_AXIS + "]");
+        }
+        this.tilesPerAxis = tilesPerAxis;
+    }
+
+    /**
+     * 设置同时简化的块数，默认为处理器的数目
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 设置简化时使用的度量，参见ObjectModel.setMode(int)。
+     * 各块内只使用MODE_QEM_A、MODE_QEM_V、MODE_QEM_N、MODE_LAZY 和MODE_EDGE_CACHE，
+     * 最后的整体简化使用全部的模式
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * 简化到原顶点数目的ratio 倍
+     * @param ratio 顶点比例，在(0, 1] 之内
+     * @return 简化后的模型
+     * @throws IOException
+     * @throws ParsingErrorException 文件格式错误或者面的顶点索引越界
+     */
+    public ObjectModel simplifiedToRatio(float ratio) throws IOException {
+        if (!(ratio > 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("Ratio must be in (0, 1]: " + ratio);
+        }
+        Path dir = Files.createTempDirectory(workDir, "tiles");
+        try (MappedArray positions = new MappedArray(dir.resolve("positions.bin"));
+             MappedArray owners = new MappedArray(dir.resolve("owners.bin"))) {
+            VertexPass vertices = new VertexPass(positions);
+            new MappedObjectFileParser(input).stream(vertices);
+
+            FacePass faces = new FacePass(dir, positions, owners, vertices);
+            try {
+                new MappedObjectFileParser(input).stream(faces);
+            } finally {
+                faces.close();
+            }
+
+            List<TileResult> tiles = simplifyTiles(dir, faces.faceCounts, positions, owners, ratio);
+            ObjectModel model = ObjectModel.fromOwnedSnapshot(stitch(tiles));
+            model.setMode(mode);
+
+            // 整体简化，主要删除各块边界附近锁定过的顶点
+            int target = (int) (vertices.count * ratio);
+            if (model.liveVertices().length > target) {
+                model.simplifiedTo(target);
+            }
+            return model;
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    private List<TileResult> simplifyTiles(Path dir, int[] faceCounts, MappedArray positions, MappedArray owners,
+                                           float ratio) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "tile-simplifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<TileResult>> futures = new ArrayList<>();
+            for (int t = 0; t < faceCounts.length; t++) {
+                if (faceCounts[t] == 0) continue;
+                final Path file = tileFile(dir, t);
+                final int faces = faceCounts[t];
+                futures.add(pool.submit(() -> simplifyTile(file, faces, positions, owners, ratio)));
+            }
+            List<TileResult> results = new ArrayList<>();
+            for (Future<TileResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 读取一块的面，建立块内的模型并锁定边界顶点后简化
+     */
+    private TileResult simplifyTile(Path file, int faceCount, MappedArray positions, MappedArray owners,
+                                    float ratio) throws IOException {
+        int[] triangles = new int[faceCount * 3];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file),
+                TILE_BUFFER_SIZE))) {
+            for (int i = 0; i < triangles.length; i++) {
+                triangles[i] = in.readInt();
+            }
+        }
+        Files.delete(file);
+
+        // 全局索引改为块内的索引
+        IntIntMap local = new IntIntMap(triangles.length);
+        int[] globals = new int[Math.min(triangles.length, 16)];
+        int vertexCount = 0;
+        for (int i = 0; i < triangles.length; i++) {
+            int l = local.get(triangles[i]);
+            if (l < 0) {
+                if (vertexCount == globals.length) {
+                    globals = Arrays.copyOf(globals, vertexCount * 2);
+                }
+                l = vertexCount++;
+                local.put(triangles[i], l);
+                globals[l] = triangles[i];
+            }
+            triangles[i] = l;
+        }
+
+        MeshSnapshot mesh = new MeshSnapshot();
+        mesh.positions = new float[vertexCount * 3];
+        boolean[] locked = new boolean[vertexCount];
+        int lockedCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            long g = globals[v];
+            mesh.positions[v * 3] = positions.getFloat(g * 3);
+            mesh.positions[v * 3 + 1] = positions.getFloat(g * 3 + 1);
+            mesh.positions[v * 3 + 2] = positions.getFloat(g * 3 + 2);
+            if (owners.getInt(g) == SHARED) {
+                locked[v] = true;
+                lockedCount++;
+            }
+        }
+        mesh.vertexCount = vertexCount;
+        mesh.triangles = triangles;
+        mesh.faceCount = faceCount;
+
+        ObjectModel model = ObjectModel.fromOwnedSnapshot(mesh);
+        model.setMode(mode & TILE_MODES);
+        model.lockVertices(locked);
+        // 边界顶点在拼接时合并，只按比例删除内部的顶点
+        model.simplifiedTo(lockedCount + (int) ((vertexCount - lockedCount) * ratio));
+
+        // 只有边界顶点需要保留全局索引用于拼接
+        int[] live = model.liveVertices();
+        int[] borderIds = new int[live.length];
+        for (int i = 0; i < live.length; i++) {
+            borderIds[i] = locked[live[i]] ? globals[live[i]] : -1;
+        }
+        return new TileResult(model.compactArrays(false), borderIds);
+    }
+
+    /**
+     * 拼接各块简化后的结果，边界顶点按全局索引合并
+     */
+    private static MeshSnapshot stitch(List<TileResult> tiles) {
+        int vertexCapacity = 0;
+        int faceCount = 0;
+        for (TileResult tile : tiles) {
+            vertexCapacity += tile.mesh.vertexCount;
+            faceCount += tile.mesh.faceCount;
+        }
+        float[] positions = new float[vertexCapacity * 3];
+        int[] triangles = new int[faceCount * 3];
+        IntIntMap border = new IntIntMap(vertexCapacity);
+        int vertexCount = 0;
+        int f = 0;
+        for (TileResult tile : tiles) {
+            int[] table = new int[tile.mesh.vertexCount];
+            for (int v = 0; v < table.length; v++) {
+                int id = tile.borderIds[v];
+                if (id >= 0) {
+                    int merged = border.get(id);
+                    if (merged >= 0) {
+                        table[v] = merged;
+                        continue;
+                    }
+                    border.put(id, vertexCount);
+                }
+                System.arraycopy(tile.mesh.positions, v * 3, positions, vertexCount * 3, 3);
+                table[v] = vertexCount++;
+            }
+            for (int i = 0; i < tile.mesh.faceCount * 3; i++) {
+                triangles[f++] = table[tile.mesh.triangles[i]];
+            }
+        }
+
+        MeshSnapshot mesh = new MeshSnapshot();
+        mesh.positions = Arrays.copyOf(positions, vertexCount * 3);
+        mesh.vertexCount = vertexCount;
+        mesh.triangles = triangles;
+        mesh.faceCount = faceCount;
+        return mesh;
+    }
+
+    private static Path tileFile(Path dir, int tile) {
+        return dir.resolve("tile" + tile + ".bin");
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 第一遍：保存顶点坐标并求包围盒
+     */
+    private static class VertexPass implements MappedObjectFileParser.RecordHandler {
+        final MappedArray positions;
+        final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        int count;
+
+        VertexPass(MappedArray positions) {
+            this.positions = positions;
+        }
+
+        @Override
+        public void vertex(float x, float y, float z) {
+            long offset = count * 3L;
+            positions.putFloat(offset, x);
+            positions.putFloat(offset + 1, y);
+            positions.putFloat(offset + 2, z);
+            include(0, x);
+            include(1, y);
+            include(2, z);
+            count++;
+        }
+
+        private void include(int axis, float value) {
+            if (value < min[axis]) min[axis] = value;
+            if (value > max[axis]) max[axis] = value;
+        }
+
+        @Override
+        public void face(int a, int b, int c) {
+        }
+    }
+
+    /**
+     * 第二遍：按重心把面写入所在块的临时文件，并记录顶点的使用者
+     */
+    private class FacePass implements MappedObjectFileParser.RecordHandler {
+        final Path dir;
+        final MappedArray positions;
+        final MappedArray owners;
+        final int vertexCount;
+        final float[] min;
+        final float cellSize;
+        final DataOutputStream[] outputs;
+        final int[] faceCounts;
+        int faceIndex;
+
+        FacePass(Path dir, MappedArray positions, MappedArray owners, VertexPass vertices) {
+            this.dir = dir;
+            this.positions = positions;
+            this.owners = owners;
+            this.vertexCount = vertices.count;
+            this.min = vertices.min;
+            float extent = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                extent = Math.max(extent, vertices.max[axis] - vertices.min[axis]);
+            }
+            this.cellSize = extent > 0 ? extent / tilesPerAxis : 1;
+            int tiles = tilesPerAxis * tilesPerAxis * tilesPerAxis;
+            this.outputs = new DataOutputStream[tiles];
+            this.faceCounts = new int[tiles];
+        }
+
+        @Override
+        public void vertex(float x, float y, float z) {
+        }
+
+        @Override
+        public void face(int a, int b, int c) {
+            faceIndex++;
+            checkIndex(a);
+            checkIndex(b);
+            checkIndex(c);
+            int tile = 0;
+            for (int axis = 2; axis >= 0; axis--) {
+                float centroid = (positions.getFloat(a * 3L + axis) + positions.getFloat(b * 3L + axis)
+                        + positions.getFloat(c * 3L + axis)) / 3;
+                int i = (int) ((centroid - min[axis]) / cellSize);
+                tile = tile * tilesPerAxis + Math.min(Math.max(i, 0), tilesPerAxis - 1);
+            }
+            try {
+                if (outputs[tile] == null) {
+                    outputs[tile] = new DataOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(tileFile(dir, tile)), TILE_BUFFER_SIZE));
+                }
+                outputs[tile].writeInt(a);
+                outputs[tile].writeInt(b);
+                outputs[tile].writeInt(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            faceCounts[tile]++;
+            own(a, tile);
+            own(b, tile);
+            own(c, tile);
+        }
+
+        private void checkIndex(int v) {
+            if (v < 0 || v >= vertexCount) {
+                throw new ParsingErrorException("Vertex index " + (v + 1) + " out of range in face " + faceIndex);
+            }
+        }
+
+        private void own(int v, int tile) {
+            int owner = owners.getInt(v);
+            if (owner == UNUSED) {
+                owners.putInt(v, tile + 1);
+            } else if (owner != SHARED && owner != tile + 1) {
+                owners.putInt(v, SHARED);
+            }
+        }
+
+        void close() throws IOException {
+            for (DataOutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+    }
+
+    private static class TileResult {
+        final MeshSnapshot mesh;
+        final int[] borderIds;      // 每个顶点的全局索引，不在边界上时为-1
+
+        TileResult(MeshSnapshot mesh, int[] borderIds) {
+            this.mesh = mesh;
+            this.borderIds = borderIds;
+        }
+    }
+
+    /**
+     * 非负int 到int 的散列表（开放寻址）
+     */
+    private static class IntIntMap {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+
+        IntIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected)) << 2;
+            keys = new int[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, -1);
+            mask = capacity - 1;
+        }
+
+        /**
+         * @return 键对应的值，不存在时返回-1
+         */
+        int get(int key) {
+            for (int i = slot(key); keys[i] >= 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(int key, int value) {
+            int i = slot(key);
+            while (keys[i] >= 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private int slot(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ h >>> 16) & mask;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.davejy.modelsimplification;
+
+/**
+ * 三角面的均匀网格空间索引，用于查询点到模型的最近距离。
+ * 每个面按包围盒加入所有相交的格子，以CSR 格式保存。查询时从点所在的格子开始逐层向外搜索，
+ * 直到未搜索的格子不可能更近为止。建立之后只读，可以在多个线程中同时查询
+ */
+class TriangleGrid {
+
+    private static final int CELLS_PER_FACE = 4;      // 格子总数不超过面数的倍数，限制稀疏模型的内存
+
+    private final float[] positions;
+    private final int[] triangles;
+    private final float minX, minY, minZ;
+    private final float cellSize;
+    private final int nx, ny, nz;
+    private final int[] cellStart;                    // 第c 个格子的面为cellFaces[cellStart[c]] 至cellFaces[cellStart[c + 1]]
+    private final int[] cellFaces;
+
+    /**
+     * @param positions 顶点坐标，每个顶点3个float
+     * @param triangles 面的顶点索引，每个面3个int
+     * @param faceCount 面的数目，必须大于0
+     */
+    TriangleGrid(float[] positions, int[] triangles, int faceCount) {
+        if (faceCount == 0) {
+            throw new IllegalArgumentException("Mesh has no faces");
+        }
+        this.positions = positions;
+        this.triangles = triangles;
+
+        float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, z0 = Float.MAX_VALUE;
+        float x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE, z1 = -Float.MAX_VALUE;
+        double area = 0;
+        for (int i = 0; i < faceCount * 3; i++) {
+            int p = triangles[i] * 3;
+            x0 = Math.min(x0, positions[p]);
+            y0 = Math.min(y0, positions[p + 1]);
+            z0 = Math.min(z0, positions[p + 2]);
+            x1 = Math.max(x1, positions[p]);
+            y1 = Math.max(y1, positions[p + 1]);
+            z1 = Math.max(z1, positions[p + 2]);
+        }
+        for (int f = 0; f < faceCount; f++) {
+            area += faceArea(positions, triangles, f);
+        }
+        minX = x0;
+        minY = y0;
+        minZ = z0;
+
+        // 格子的边长与面的平均大小相当，但格子总数不超过面数的CELLS_PER_FACE 倍
+        float extent = Math.max(x1 - x0, Math.max(y1 - y0, z1 - z0));
+        float size = (float) Math.sqrt(area / faceCount) * 2;
+        if (!(size > extent * 1e-6f)) {
+            size = extent > 0 ? extent * 1e-6f : 1;
+        }
+        while (cellCount(x1 - x0, y1 - y0, z1 - z0, size) > (long) faceCount * CELLS_PER_FACE + 1) {
+            size *= 1.25f;
+        }
+        cellSize = size;
+        nx = (int) ((x1 - x0) / size) + 1;
+        ny = (int) ((y1 - y0) / size) + 1;
+        nz = (int) ((z1 - z0) / size) + 1;
+
+        // 第一遍统计每个格子中面的数目，第二遍填入面
+        cellStart = new int[nx * ny * nz + 1];
+        int[] bounds = new int[6];
+        long total = 0;
+        for (int f = 0; f < faceCount; f++) {
+            faceCells(f, bounds);
+            for (int z = bounds[2]; z <= bounds[5]; z++) {
+                for (int y = bounds[1]; y <= bounds[4]; y++) {
+                    for (int x = bounds[0]; x <= bounds[3]; x++) {
+                        cellStart[cell(x, y, z) + 1]++;
+                        total++;
+                    }
+                }
+            }
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Triangle grid too large: " + total);
+        }
+        for (int c = 0; c < nx * ny * nz; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellFaces = new int[(int) total];
+        int[] fill = new int[nx * ny * nz];
+        for (int f = 0; f < faceCount; f++) {
+            faceCells(f, bounds);
+            for (int z = bounds[2]; z <= bounds[5]; z++) {
+                for (int y = bounds[1]; y <= bounds[4]; y++) {
+                    for (int x = bounds[0]; x <= bounds[3]; x++) {
+                        int c = cell(x, y, z);
+                        cellFaces[cellStart[c] + fill[c]++] = f;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 点到最近的面的距离的平方
+     */
+    float nearestDistanceSquared(float px, float py, float pz) {
+        int cx = clamp((int) Math.floor((px - minX) / cellSize), nx);
+        int cy = clamp((int) Math.floor((py - minY) / cellSize), ny);
+        int cz = clamp((int) Math.floor((pz - minZ) / cellSize), nz);
+        float best = Float.MAX_VALUE;
+        for (int r = 0; ; r++) {
+            // 第r 层为与起始格子的切比雪夫距离等于r 的格子
+            for (int z = Math.max(cz - r, 0); z <= Math.min(cz + r, nz - 1); z++) {
+                boolean zEdge = z == cz - r || z == cz + r;
+                for (int y = Math.max(cy - r, 0); y <= Math.min(cy + r, ny - 1); y++) {
+                    boolean yEdge = y == cy - r || y == cy + r;
+                    int step = zEdge || yEdge || r == 0 ? 1 : 2 * r;
+                    for (int x = cx - r; x <= cx + r; x += step) {
+                        if (x < 0 || x >= nx) continue;
+                        int c = cell(x, y, z);
+                        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                            float d = distanceSquared(px, py, pz, cellFaces[k]);
+                            if (d < best) best = d;
+                        }
+                    }
+                }
+            }
+            // 未搜索的格子都在已搜索的格子组成的长方体之外，到该点的距离不小于点到长方体表面的距离
+            float reach = Float.MAX_VALUE;
+            if (cx - r > 0) reach = Math.min(reach, px - (minX + (cx - r) * cellSize));
+            if (cx + r < nx - 1) reach = Math.min(reach, minX + (cx + r + 1) * cellSize - px);
+            if (cy - r > 0) reach = Math.min(reach, py - (minY + (cy - r) * cellSize));
+            if (cy + r < ny - 1) reach = Math.min(reach, minY + (cy + r + 1) * cellSize - py);
+            if (cz - r > 0) reach = Math.min(reach, pz - (minZ + (cz - r) * cellSize));
+            if (cz + r < nz - 1) reach = Math.min(reach, minZ + (cz + r + 1) * cellSize - pz);
+            if (reach == Float.MAX_VALUE || best <= reach * reach) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private float distanceSquared(float px, float py, float pz, int f) {
+        int a = triangles[f * 3] * 3, b = triangles[f * 3 + 1] * 3, c = triangles[f * 3 + 2] * 3;
+        return pointTriangleDistanceSquared(px, py, pz,
+                positions[a], positions[a + 1], positions[a + 2],
+                positions[b], positions[b + 1], positions[b + 2],
+                positions[c], positions[c + 1], positions[c + 2]);
+    }
+
+    /**
+     * 点到三角形的最近距离的平方，按最近点所在的区域（顶点、边或面内）分别计算
+     */
+    static float pointTriangleDistanceSquared(float px, float py, float pz,
+                                              float ax, float ay, float az,
+                                              float bx, float by, float bz,
+                                              float cx, float cy, float cz) {
+        float abx = bx - ax, aby = by - ay, abz = bz - az;
+        float acx = cx - ax, acy = cy - ay, acz = cz - az;
+        float apx = px - ax, apy = py - ay, apz = pz - az;
+        float d1 = abx * apx + aby * apy + abz * apz;
+        float d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0 && d2 <= 0) {
+            return apx * apx + apy * apy + apz * apz;                          // 顶点a
+        }
+
+        float bpx = px - bx, bpy = py - by, bpz = pz - bz;
+        float d3 = abx * bpx + aby * bpy + abz * bpz;
+        float d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0 && d4 <= d3) {
+            return bpx * bpx + bpy * bpy + bpz * bpz;                          // 顶点b
+        }
+
+        float vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            float v = d1 / (d1 - d3);                                           // 边ab
+            return squared(apx - v * abx, apy - v * aby, apz - v * abz);
+        }
+
+        float cpx = px - cx, cpy = py - cy, cpz = pz - cz;
+        float d5 = abx * cpx + aby * cpy + abz * cpz;
+        float d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0 && d5 <= d6) {
+            return cpx * cpx + cpy * cpy + cpz * cpz;                          // 顶点c
+        }
+
+        float vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            float w = d2 / (d2 - d6);                                           // 边ac
+            return squared(apx - w * acx, apy - w * acy, apz - w * acz);
+        }
+
+        float va = d3 * d6 - d5 * d4;
+        if (va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0) {
+            float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));                      // 边bc
+            return squared(bpx - w * (cx - bx), bpy - w * (cy - by), bpz - w * (cz - bz));
+        }
+
+        float sum = va + vb + vc;
+        if (sum == 0) {
+            // 退化的三角形，以上各区域已经覆盖了所有的边和顶点
+            return Math.min(apx * apx + apy * apy + apz * apz, Math.min(
+                    bpx * bpx + bpy * bpy + bpz * bpz, cpx * cpx + cpy * cpy + cpz * cpz));
+        }
+        float v = vb / sum;                                                     // 面内
+        float w = vc / sum;
+        return squared(apx - v * abx - w * acx, apy - v * aby - w * acy, apz - v * abz - w * acz);
+    }
+
+    /**
+     * 面的面积
+     */
+    static double faceArea(float[] positions, int[] triangles, int f) {
+        int a = triangles[f * 3] * 3, b = triangles[f * 3 + 1] * 3, c = triangles[f * 3 + 2] * 3;
+        double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+        double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+        double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+        return Math.sqrt(nx * nx + ny * ny + nz * nz) / 2;
+    }
+
+    private static float squared(float x, float y, float z) {
+        return x * x + y * y + z * z;
+    }
+
+    private static long cellCount(float ex, float ey, float ez, float size) {
+        return ((long) (ex / size) + 1) * ((long) (ey / size) + 1) * ((long) (ez / size) + 1);
+    }
+
+    /**
+     * 面的包围盒覆盖的格子范围：x0, y0, z0, x1, y1, z1
+     */
+    private void faceCells(int f, int[] res) {
+        float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, z0 = Float.MAX_VALUE;
+        float x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE, z1 = -Float.MAX_VALUE;
+        for (int i = f * 3; i < f * 3 + 3; i++) {
+            int p = triangles[i] * 3;
+            x0 = Math.min(x0, positions[p]);
+            y0 = Math.min(y0, positions[p + 1]);
+            z0 = Math.min(z0, positions[p + 2]);
+            x1 = Math.max(x1, positions[p]);
+            y1 = Math.max(y1, positions[p + 1]);
+            z1 = Math.max(z1, positions[p + 2]);
+        }
+        res[0] = clamp((int) ((x0 - minX) / cellSize), nx);
+        res[1] = clamp((int) ((y0 - minY) / cellSize), ny);
+        res[2] = clamp((int) ((z0 - minZ) / cellSize), nz);
+        res[3] = clamp((int) ((x1 - minX) / cellSize), nx);
+        res[4] = clamp((int) ((y1 - minY) / cellSize), ny);
+        res[5] = clamp((int) ((z1 - minZ) / cellSize), nz);
+    }
+
+    private static int clamp(int i, int n) {
+        return i < 0 ? 0 : (i >= n ? n - 1 : i);
+    }
+
+    private int cell(int x, int y, int z) {
+        return (z * ny + y) * nx + x;
+    }
+}
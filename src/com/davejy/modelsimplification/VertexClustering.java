@@ -0,0 +1,339 @@
+package com.davejy.modelsimplification;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 均匀网格顶点聚类（vertex clustering）。将包围盒划分为边长相等的立方体格子，
+ * 同一格子中的顶点合并为一个代表点，代表点取格子内二次方误差最小的位置（Lindstrom 的方法），
+ * 误差矩阵奇异或最优位置落在格子之外时取格子内顶点的平均位置。两个以上顶点落在同一格子的面被删除，
+ * 由同样三个格子组成的面只保留一个。所需时间与输入的大小成正比，适合在QEM 简化之前对很大的模型做粗简化。
+ * 每个对象同一时刻只能进行一次聚类
+ */
+class VertexClustering {
+
+    private static final long EMPTY_KEY = -1;
+
+    private final int resolution;      // 包围盒最长边上的格子数
+
+    // 格子的数据，按第一次出现的顺序编号
+    private long[] cellKeys = new long[0];
+    private float[] cellQuadrics = new float[0];
+    private double[] cellSums = new double[0];     // 格子内顶点坐标之和
+    private int[] cellCounts = new int[0];
+    private int cells;
+
+    // 当前输入的模型
+    private float[] positions;
+    private int vertexCount;
+    private int[] vertexCells;                     // 每个顶点所在的格子
+    private float minX, minY, minZ;
+    private float cellSize;
+    private int inputFaces;                        // 已读入的面数，用于错误信息
+    private final float[] faceQuadric = new float[QuadricHelper.SIZE];
+
+    // 聚类后的面（格子编号），以及按三个格子查找已输出的面的散列表，元素为面的编号加1，0为空
+    private int[] outTriangles;
+    private int outFaces;
+    private int[] faceTable;
+
+    // 格子坐标到格子编号的散列表（开放寻址）
+    private long[] tableKeys;
+    private int[] tableValues;
+    private int tableMask;
+
+    /**
+     * @param resolution 包围盒最长边上的格子数，不小于1
+     */
+    VertexClustering(int resolution) {
+        if (resolution < 1 || resolution > (1 << 20)) {
+            throw new IllegalArgumentException("Grid resolution " + resolution + " out of range [1, 2^20]");
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * 对模型进行聚类
+     * @param positions 顶点坐标，每个顶点3个float
+     * @param vertexCount 顶点数目
+     * @param triangles 面的顶点索引（从0开始），每个面3个int
+     * @param faceCount 面的数目
+     * @return 聚类后的紧凑模型数据（不含法向量），不被任何面引用的格子不会输出
+     * @throws ParsingErrorException 面的顶点索引越界
+     */
+    MeshSnapshot cluster(float[] positions, int vertexCount, int[] triangles, int faceCount) {
+        assignCells(positions, vertexCount);
+        for (int f = 0; f < faceCount; f++) {
+            addFace(triangles[f * 3], triangles[f * 3 + 1], triangles[f * 3 + 2]);
+        }
+        return finish();
+    }
+
+    /**
+     * 流式读取.obj 文件并聚类。第一遍只读取顶点坐标，第二遍逐个读入面并直接累加到格子，
+     * 原始的面不保存，内存主要为顶点坐标、每个顶点所在的格子和聚类后的面
+     * @param parser .obj 文件的解析器
+     * @return 聚类后的紧凑模型数据（不含法向量）
+     * @throws IOException
+     * @throws ParsingErrorException 文件格式错误或面的顶点索引越界
+     */
+    MeshSnapshot cluster(MappedObjectFileParser parser) throws IOException {
+        float[][] positions = {new float[3 * 1024]};
+        int[] count = {0};
+        parser.stream(new MappedObjectFileParser.RecordHandler() {
+            @Override
+            public void vertex(float x, float y, float z) {
+                if (count[0] * 3 == positions[0].length) {
+                    positions[0] = Arrays.copyOf(positions[0], positions[0].length * 2);
+                }
+                positions[0][count[0] * 3] = x;
+                positions[0][count[0] * 3 + 1] = y;
+                positions[0][count[0] * 3 + 2] = z;
+                count[0]++;
+            }
+
+            @Override
+            public void face(int a, int b, int c) {
+            }
+        });
+
+        assignCells(positions[0], count[0]);
+        parser.stream(new MappedObjectFileParser.RecordHandler() {
+            @Override
+            public void vertex(float x, float y, float z) {
+            }
+
+            @Override
+            public void face(int a, int b, int c) {
+                addFace(a, b, c);
+            }
+        });
+        return finish();
+    }
+
+    /**
+     * 求包围盒，确定每个顶点所在的格子，并累加格子内顶点的坐标
+     */
+    private void assignCells(float[] positions, int vertexCount) {
+        this.positions = positions;
+        this.vertexCount = vertexCount;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        minX = Float.MAX_VALUE;
+        minY = Float.MAX_VALUE;
+        minZ = Float.MAX_VALUE;
+        for (int v = 0; v < vertexCount; v++) {
+            float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+            if (z < minZ) minZ = z;
+            if (z > maxZ) maxZ = z;
+        }
+        float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        cellSize = extent > 0 ? extent / resolution : 1;
+
+        // 每个顶点所在的格子
+        vertexCells = new int[vertexCount];
+        initTable(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            long ix = cellCoordinate(positions[v * 3], minX, cellSize);
+            long iy = cellCoordinate(positions[v * 3 + 1], minY, cellSize);
+            long iz = cellCoordinate(positions[v * 3 + 2], minZ, cellSize);
+            int cell = findOrAddCell(ix | iy << 21 | iz << 42);
+            vertexCells[v] = cell;
+            cellSums[cell * 3] += positions[v * 3];
+            cellSums[cell * 3 + 1] += positions[v * 3 + 1];
+            cellSums[cell * 3 + 2] += positions[v * 3 + 2];
+            cellCounts[cell]++;
+        }
+        tableKeys = null;
+        tableValues = null;
+
+        cellQuadrics = new float[cells * QuadricHelper.SIZE];
+        outTriangles = new int[3 * 1024];
+        outFaces = 0;
+        inputFaces = 0;
+        faceTable = new int[1024];
+    }
+
+    /**
+     * 面的基础二次方误差矩阵按面积加权后加到三个顶点所在的格子。三个顶点在不同格子时输出一个面，
+     * 但由同样三个格子组成的面只输出第一个（不论顶点的顺序），否则聚类后会有重叠的面
+     */
+    private void addFace(int i1, int i2, int i3) {
+        inputFaces++;
+        if (i1 < 0 || i1 >= vertexCount || i2 < 0 || i2 >= vertexCount || i3 < 0 || i3 >= vertexCount) {
+            int bad = i1 < 0 || i1 >= vertexCount ? i1 : i2 < 0 || i2 >= vertexCount ? i2 : i3;
+            throw new ParsingErrorException("Vertex index " + (bad + 1) + " out of range in face " + inputFaces);
+        }
+        int p1 = i1 * 3;
+        int p2 = i2 * 3;
+        int p3 = i3 * 3;
+        float ux = positions[p1] - positions[p2];
+        float uy = positions[p1 + 1] - positions[p2 + 1];
+        float uz = positions[p1 + 2] - positions[p2 + 2];
+        float vx = positions[p3] - positions[p2];
+        float vy = positions[p3 + 1] - positions[p2 + 1];
+        float vz = positions[p3 + 2] - positions[p2 + 2];
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float d = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        int c1 = vertexCells[i1];
+        int c2 = vertexCells[i2];
+        int c3 = vertexCells[i3];
+        if (d != 0) {
+            nx /= d;
+            ny /= d;
+            nz /= d;
+            QuadricHelper.fromPlane(faceQuadric, 0, nx, ny, nz,
+                    -(nx * positions[p1] + ny * positions[p1 + 1] + nz * positions[p1 + 2]));
+            float area = d / 2;
+            QuadricHelper.addScaled(cellQuadrics, c1 * QuadricHelper.SIZE, faceQuadric, 0, area);
+            QuadricHelper.addScaled(cellQuadrics, c2 * QuadricHelper.SIZE, faceQuadric, 0, area);
+            QuadricHelper.addScaled(cellQuadrics, c3 * QuadricHelper.SIZE, faceQuadric, 0, area);
+        }
+        if (c1 != c2 && c2 != c3 && c1 != c3 && addUniqueFace(c1, c2, c3)) {
+            if (outFaces * 3 == outTriangles.length) {
+                outTriangles = Arrays.copyOf(outTriangles, outTriangles.length * 2);
+            }
+            outTriangles[outFaces * 3] = c1;
+            outTriangles[outFaces * 3 + 1] = c2;
+            outTriangles[outFaces * 3 + 2] = c3;
+            outFaces++;
+        }
+    }
+
+    /**
+     * 在已输出的面的散列表中查找由这三个格子组成的面，没有时把即将输出的面（编号为outFaces）加入散列表
+     * @return 是否为新的面
+     */
+    private boolean addUniqueFace(int c1, int c2, int c3) {
+        if ((outFaces + 1) * 2 > faceTable.length) {
+            // 装载因子不超过1/2，扩展时重新插入所有的面
+            faceTable = new int[faceTable.length * 2];
+            for (int f = 0; f < outFaces; f++) {
+                int i = faceSlot(outTriangles[f * 3], outTriangles[f * 3 + 1], outTriangles[f * 3 + 2]);
+                while (faceTable[i] != 0) {
+                    i = (i + 1) & (faceTable.length - 1);
+                }
+                faceTable[i] = f + 1;
+            }
+        }
+        for (int i = faceSlot(c1, c2, c3); ; i = (i + 1) & (faceTable.length - 1)) {
+            int f = faceTable[i] - 1;
+            if (f < 0) {
+                faceTable[i] = outFaces + 1;
+                return true;
+            }
+            int a = outTriangles[f * 3], b = outTriangles[f * 3 + 1], c = outTriangles[f * 3 + 2];
+            if ((a == c1 || a == c2 || a == c3) && (b == c1 || b == c2 || b == c3) && (c == c1 || c == c2 || c == c3)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 与顶点顺序无关的散列位置
+     */
+    private int faceSlot(int c1, int c2, int c3) {
+        long h = (long) Math.min(c1, Math.min(c2, c3)) * 0x9E3779B97F4A7C15L
+                + (long) Math.max(c1, Math.max(c2, c3)) * 0xC2B2AE3D27D4EB4FL + (c1 + c2 + c3);
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (faceTable.length - 1);
+    }
+
+    /**
+     * 只保留被面引用的格子，按编号顺序重新编号，输出紧凑的模型数据
+     */
+    private MeshSnapshot finish() {
+        int[] table = new int[cells];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < outFaces * 3; i++) {
+            table[outTriangles[i]] = 0;
+        }
+        int outVertices = 0;
+        for (int c = 0; c < cells; c++) {
+            if (table[c] == 0) {
+                table[c] = outVertices++;
+            }
+        }
+
+        MeshSnapshot mesh = new MeshSnapshot();
+        mesh.positions = new float[outVertices * 3];
+        float[] position = new float[3];
+        for (int c = 0; c < cells; c++) {
+            if (table[c] < 0) continue;
+            representative(c, minX, minY, minZ, cellSize, position);
+            System.arraycopy(position, 0, mesh.positions, table[c] * 3, 3);
+        }
+        mesh.vertexCount = outVertices;
+        for (int i = 0; i < outFaces * 3; i++) {
+            outTriangles[i] = table[outTriangles[i]];
+        }
+        mesh.triangles = Arrays.copyOf(outTriangles, outFaces * 3);
+        mesh.faceCount = outFaces;
+        positions = null;
+        vertexCells = null;
+        faceTable = null;
+        outTriangles = null;
+        return mesh;
+    }
+
+    /**
+     * 计算格子的代表点
+     */
+    private void representative(int c, float minX, float minY, float minZ, float cellSize, float[] res) {
+        long key = cellKeys[c];
+        float x0 = minX + (key & 0x1FFFFF) * cellSize;
+        float y0 = minY + (key >>> 21 & 0x1FFFFF) * cellSize;
+        float z0 = minZ + (key >>> 42 & 0x1FFFFF) * cellSize;
+        if (QuadricHelper.optimalPosition(cellQuadrics, c * QuadricHelper.SIZE, res, 0)
+                && inside(res[0], x0, cellSize) && inside(res[1], y0, cellSize) && inside(res[2], z0, cellSize)) {
+            return;
+        }
+        res[0] = (float) (cellSums[c * 3] / cellCounts[c]);
+        res[1] = (float) (cellSums[c * 3 + 1] / cellCounts[c]);
+        res[2] = (float) (cellSums[c * 3 + 2] / cellCounts[c]);
+    }
+
+    private static boolean inside(float value, float min, float size) {
+        return value >= min && value <= min + size;
+    }
+
+    private long cellCoordinate(float value, float min, float cellSize) {
+        long i = (long) ((value - min) / cellSize);
+        return Math.min(Math.max(i, 0), resolution - 1);
+    }
+
+    private void initTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected)) << 1;
+        tableKeys = new long[capacity];
+        tableValues = new int[capacity];
+        Arrays.fill(tableKeys, EMPTY_KEY);
+        tableMask = capacity - 1;
+        cells = 0;
+    }
+
+    private int findOrAddCell(long key) {
+        int i = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & tableMask;
+        while (tableKeys[i] != EMPTY_KEY) {
+            if (tableKeys[i] == key) {
+                return tableValues[i];
+            }
+            i = (i + 1) & tableMask;
+        }
+        if (cells == cellKeys.length) {
+            int capacity = Math.max(64, cells * 2);
+            cellKeys = Arrays.copyOf(cellKeys, capacity);
+            cellSums = Arrays.copyOf(cellSums, capacity * 3);
+            cellCounts = Arrays.copyOf(cellCounts, capacity);
+        }
+        tableKeys[i] = key;
+        tableValues[i] = cells;
+        cellKeys[cells] = key;
+        return cells++;
+    }
+}
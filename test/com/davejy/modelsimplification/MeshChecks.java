@@ -0,0 +1,63 @@
+package com.davejy.modelsimplification;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 测试中使用的模型拓扑检查
+ */
+class MeshChecks {
+
+    private MeshChecks() {
+    }
+
+    /**
+     * @return 只属于一个面的边（边界边）的数目，封闭的模型为0
+     */
+    static int boundaryEdges(MeshSnapshot mesh) {
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int f = 0; f < mesh.faceCount; f++) {
+            for (int k = 0; k < 3; k++) {
+                int a = mesh.triangles[f * 3 + k], b = mesh.triangles[f * 3 + (k + 1) % 3];
+                long key = (long) Math.min(a, b) << 32 | Math.max(a, b);
+                edges.merge(key, 1, Integer::sum);
+            }
+        }
+        int boundary = 0;
+        for (int count : edges.values()) {
+            if (count == 1) boundary++;
+        }
+        return boundary;
+    }
+
+    /**
+     * @return 顶点集合互不相同的面的数目，不考虑顶点的顺序
+     */
+    static int uniqueFaces(MeshSnapshot mesh) {
+        Set<String> faces = new HashSet<>();
+        for (int f = 0; f < mesh.faceCount; f++) {
+            int a = mesh.triangles[f * 3], b = mesh.triangles[f * 3 + 1], c = mesh.triangles[f * 3 + 2];
+            int min = Math.min(a, Math.min(b, c)), max = Math.max(a, Math.max(b, c));
+            faces.add(min + " " + (a + b + c - min - max) + " " + max);
+        }
+        return faces.size();
+    }
+
+    /**
+     * @return writeTo 输出的文本，用于逐字节比较两个模型
+     */
+    static byte[] textBytes(ObjectModel model) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        model.writeTo(os);
+        return os.toByteArray();
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
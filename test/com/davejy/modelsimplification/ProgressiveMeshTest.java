@@ -0,0 +1,35 @@
+package com.davejy.modelsimplification;
+
+import java.util.Arrays;
+
+/**
+ * 以MODE_PROGRESSIVE 记录简化过程后，用extractLOD 提取的每个层次与从头简化到同样顶点数的模型完全相同。
+ * 层次的顺序先变粗再变细，同时检查重做和撤销收缩。
+ * 在项目根目录下运行，参数为.obj 文件，默认为dinosaur.2k.obj
+ */
+public class ProgressiveMeshTest {
+
+    private static final float[] RATIOS = {0.5f, 0.25f, 0.1f, 0.75f, 0.3f};
+
+    public static void main(String[] args) {
+        String input = args.length > 0 ? args[0] : "dinosaur.2k.obj";
+        ObjectModel recorded = new ObjectModel(input);
+        int original = recorded.getVertexCount();
+        recorded.setMode(ObjectModel.MODE_QEM | ObjectModel.MODE_PROGRESSIVE);
+        recorded.simplifiedToRatio(0.05f);
+
+        for (float ratio : RATIOS) {
+            int vertexCount = (int) (original * ratio);
+            ObjectModel lod = recorded.extractLOD(vertexCount);
+
+            ObjectModel scratch = new ObjectModel(input);
+            scratch.setMode(ObjectModel.MODE_QEM);
+            scratch.simplifiedTo(vertexCount);
+            MeshChecks.check(lod.getVertexCount() == vertexCount,
+                    "Ratio " + ratio + ": extracted " + lod.getVertexCount() + " vertices, expected " + vertexCount);
+            MeshChecks.check(Arrays.equals(MeshChecks.textBytes(lod), MeshChecks.textBytes(scratch)),
+                    "Ratio " + ratio + ": extracted level differs from simplifying from scratch");
+        }
+        System.out.println("ProgressiveMeshTest passed");
+    }
+}
@@ -0,0 +1,45 @@
+package com.davejy.modelsimplification;
+
+import java.util.Arrays;
+
+/**
+ * 分几次调用simplifiedTo 逐步简化的结果与一次简化到同样顶点数的结果完全相同，
+ * 包括中间调用了compact 的情况。
+ * 在项目根目录下运行，参数为.obj 文件，默认为dinosaur.2k.obj
+ */
+public class ResumeSimplificationTest {
+
+    private static final float[][] STEPS = {
+            {0.1f},
+            {0.5f, 0.1f},
+            {0.9f, 0.6f, 0.3f, 0.1f},
+    };
+
+    public static void main(String[] args) {
+        String input = args.length > 0 ? args[0] : "dinosaur.2k.obj";
+        ObjectModel oneStep = new ObjectModel(input);
+        int original = oneStep.getVertexCount();
+        oneStep.setMode(ObjectModel.MODE_QEM);
+        oneStep.simplifiedTo((int) (original * 0.1f));
+        byte[] expected = MeshChecks.textBytes(oneStep);
+
+        for (float[] steps : STEPS) {
+            ObjectModel model = new ObjectModel(input);
+            model.setMode(ObjectModel.MODE_QEM);
+            for (float ratio : steps) {
+                model.simplifiedTo((int) (original * ratio));
+            }
+            MeshChecks.check(Arrays.equals(MeshChecks.textBytes(model), expected),
+                    "Steps " + Arrays.toString(steps) + ": result differs from simplifying in one step");
+        }
+
+        ObjectModel compacted = new ObjectModel(input);
+        compacted.setMode(ObjectModel.MODE_QEM);
+        compacted.simplifiedTo(original / 2);
+        compacted.compact();
+        compacted.simplifiedTo((int) (original * 0.1f));
+        MeshChecks.check(Arrays.equals(MeshChecks.textBytes(compacted), expected),
+                "Compact between steps: result differs from simplifying in one step");
+        System.out.println("ResumeSimplificationTest passed");
+    }
+}
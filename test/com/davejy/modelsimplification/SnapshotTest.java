@@ -0,0 +1,47 @@
+package com.davejy.modelsimplification;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * saveSnapshot 保存、loadSnapshot 加载后的模型与原模型的writeTo 输出完全相同。
+ * 分别检查是否保存面的数据，以及原模型是否已简化（有已删除的顶点和面）。
+ * 未简化的模型加载后简化的结果也与原模型相同；已简化的模型累积的二次方误差矩阵不保存在快照中，继续简化的结果可能不同
+ * 在项目根目录下运行，参数为.obj 文件，默认为dinosaur.2k.obj
+ */
+public class SnapshotTest {
+
+    private static final float[] RATIOS = {1f, 0.5f};
+
+    public static void main(String[] args) throws Exception {
+        String input = args.length > 0 ? args[0] : "dinosaur.2k.obj";
+        Path file = Files.createTempFile("snapshot-test", ".bin");
+        try {
+            for (float ratio : RATIOS) {
+                for (boolean withFaceData : new boolean[] {false, true}) {
+                    String name = "Ratio " + ratio + (withFaceData ? " with" : " without") + " face data";
+                    ObjectModel model = new ObjectModel(input);
+                    int original = model.getVertexCount();
+                    model.simplifiedToRatio(ratio);
+                    model.saveSnapshot(file.toString(), withFaceData);
+
+                    ObjectModel loaded = new ObjectModel(input).loadSnapshot(file.toString());
+                    MeshChecks.check(Arrays.equals(MeshChecks.textBytes(loaded), MeshChecks.textBytes(model)),
+                            name + ": loaded snapshot differs from the saved model");
+
+                    if (ratio < 1) {
+                        continue;
+                    }
+                    model.simplifiedTo(original / 10);
+                    loaded.simplifiedTo(original / 10);
+                    MeshChecks.check(Arrays.equals(MeshChecks.textBytes(loaded), MeshChecks.textBytes(model)),
+                            name + ": loaded snapshot simplifies differently from the saved model");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("SnapshotTest passed");
+    }
+}
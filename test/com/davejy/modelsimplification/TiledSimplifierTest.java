@@ -0,0 +1,80 @@
+package com.davejy.modelsimplification;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 分块简化不能在块之间产生裂缝：封闭的模型分块简化后仍然是封闭的。
+ * 同时检查锁定的顶点在compact 之后继续简化时仍然保持不动。
+ * 在项目根目录下运行，参数为.obj 文件，默认为dinosaur.2k.obj
+ */
+public class TiledSimplifierTest {
+
+    private static final int[] MODES = {
+            ObjectModel.MODE_QEM,
+            ObjectModel.MODE_EDGE_CACHE,
+            ObjectModel.MODE_LAZY | ObjectModel.MODE_EDGE_CACHE,
+            ObjectModel.MODE_QEM_N | ObjectModel.MODE_EDGE_CACHE,
+    };
+
+    public static void main(String[] args) throws Exception {
+        Path input = Paths.get(args.length > 0 ? args[0] : "dinosaur.2k.obj");
+        MeshChecks.check(MeshChecks.boundaryEdges(new ObjectModel(input.toString()).compactArrays(false)) == 0,
+                "Input is not closed: " + input);
+
+        Path workDir = Files.createTempDirectory("tiled-test");
+        try {
+            for (int mode : MODES) {
+                TiledSimplifier simplifier = new TiledSimplifier(input, workDir);
+                simplifier.setMode(mode);
+                MeshSnapshot mesh = simplifier.simplifiedToRatio(0.3f).compactArrays(false);
+                int boundary = MeshChecks.boundaryEdges(mesh);
+                MeshChecks.check(boundary == 0, "Mode " + mode + ": " + boundary + " boundary edges after tiling");
+            }
+        } finally {
+            Files.deleteIfExists(workDir);
+        }
+
+        for (int mode : MODES) {
+            checkLockedAfterCompact(input.toString(), mode);
+        }
+        System.out.println("TiledSimplifierTest passed");
+    }
+
+    /**
+     * 锁定的顶点在整理存储空间（compact）之后继续简化时也不能被删除或移动
+     */
+    private static void checkLockedAfterCompact(String input, int mode) {
+        ObjectModel model = new ObjectModel(input);
+        model.setMode(mode);
+        MeshSnapshot original = model.compactArrays(false);
+        boolean[] locked = new boolean[original.vertexCount];
+        Set<String> lockedPositions = new HashSet<>();
+        for (int v = 0; v < original.vertexCount; v += 3) {
+            locked[v] = true;
+            lockedPositions.add(positionKey(original.positions, v));
+        }
+        model.lockVertices(locked);
+
+        model.simplifiedTo(original.vertexCount * 8 / 10);
+        model.compact();
+        model.simplifiedTo(original.vertexCount / 2);
+
+        MeshSnapshot mesh = model.compactArrays(false);
+        Set<String> remaining = new HashSet<>();
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            remaining.add(positionKey(mesh.positions, v));
+        }
+        lockedPositions.removeAll(remaining);
+        MeshChecks.check(lockedPositions.isEmpty(),
+                "Mode " + mode + ": " + lockedPositions.size() + " locked vertices removed or moved after compact");
+    }
+
+    private static String positionKey(float[] positions, int v) {
+        return Float.floatToIntBits(positions[v * 3]) + " " + Float.floatToIntBits(positions[v * 3 + 1])
+                + " " + Float.floatToIntBits(positions[v * 3 + 2]);
+    }
+}
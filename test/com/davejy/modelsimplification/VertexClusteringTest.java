@@ -0,0 +1,30 @@
+package com.davejy.modelsimplification;
+
+import java.nio.file.Paths;
+
+/**
+ * 顶点聚类不能输出重复的面：由同样三个顶点组成的面只保留一个。
+ * 同时检查流式读取文件的聚类与对已加载的模型聚类结果相同。
+ * 在项目根目录下运行，参数为.obj 文件，默认为dinosaur.2k.obj
+ */
+public class VertexClusteringTest {
+
+    private static final int[] RESOLUTIONS = {5, 10, 30, 100};
+
+    public static void main(String[] args) throws Exception {
+        String input = args.length > 0 ? args[0] : "dinosaur.2k.obj";
+        for (int resolution : RESOLUTIONS) {
+            MeshSnapshot streamed = new VertexClustering(resolution).cluster(new MappedObjectFileParser(Paths.get(input)));
+            int unique = MeshChecks.uniqueFaces(streamed);
+            MeshChecks.check(unique == streamed.faceCount,
+                    "Resolution " + resolution + ": " + (streamed.faceCount - unique) + " duplicate faces");
+
+            ObjectModel model = new ObjectModel(input);
+            model.clusterVertices(resolution);
+            MeshSnapshot loaded = model.compactArrays(false);
+            MeshChecks.check(loaded.faceCount == streamed.faceCount && loaded.vertexCount == streamed.vertexCount,
+                    "Resolution " + resolution + ": streamed and in-memory clustering differ");
+        }
+        System.out.println("VertexClusteringTest passed");
+    }
+}